@@ -0,0 +1,100 @@
+package net.lania.whitelist.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import com.velocitypowered.api.proxy.Player;
+
+import dev.dejvokep.boostedyaml.YamlDocument;
+
+import lombok.experimental.UtilityClass;
+import lombok.val;
+import net.lania.whitelist.ConfigManager;
+import net.lania.whitelist.UuidUtils;
+import net.lania.whitelist.VelocityWhitelist;
+import net.lania.whitelist.storage.WhitelistEntry;
+
+/**
+ * Shared setup for the benchmarks: a plugin instance without a proxy, a
+ * configuration loaded from the bundled config.yml and generated players.
+ */
+@UtilityClass
+public class Fixtures {
+
+  public static final Logger LOGGER = NOPLogger.NOP_LOGGER;
+
+  /**
+   * Creates a plugin instance backed by a temporary data directory. Nothing
+   * that needs the proxy may be called on it.
+   */
+  public static VelocityWhitelist plugin(Path dataDirectory) {
+    return new VelocityWhitelist(null, LOGGER, dataDirectory);
+  }
+
+  /**
+   * Loads the bundled configuration into a temporary data directory, with the
+   * whitelist enabled and the snapshot file disabled.
+   */
+  public static ConfigManager config(VelocityWhitelist plugin, Path dataDirectory) {
+    val config = new ConfigManager(plugin, LOGGER, dataDirectory);
+    config.initConfig();
+    // The loaded sections are immutable, change the file and read it again
+    try {
+      val file = YamlDocument.create(dataDirectory.resolve("config.yml").toFile());
+      file.set("cache.snapshotFile", "");
+      file.save();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (!config.reloadConfig()) {
+      throw new IllegalStateException("Failed to reload the benchmark configuration");
+    }
+    config.setPluginEnabled(true);
+    return config;
+  }
+
+  public static Path tempDirectory() {
+    try {
+      return Files.createTempDirectory("vwl-bench");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Generates whitelist entries with offline mode UUIDs.
+   */
+  public static List<WhitelistEntry> entries(int count) {
+    val entries = new ArrayList<WhitelistEntry>(count);
+    for (var i = 0; i < count; i++) {
+      val username = "Player" + i;
+      entries.add(new WhitelistEntry(UuidUtils.generateUniqueId(username), username));
+    }
+    return entries;
+  }
+
+  /**
+   * Creates a Player stub answering only getUniqueId and getUsername.
+   */
+  public static Player player(UUID uniqueId, String username) {
+    return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] { Player.class },
+        (proxy, method, args) -> switch (method.getName()) {
+          case "getUniqueId" -> uniqueId;
+          case "getUsername" -> username;
+          case "hashCode" -> System.identityHashCode(proxy);
+          case "equals" -> proxy == args[0];
+          case "toString" -> "Player[" + username + "]";
+          default -> throw new UnsupportedOperationException(method.getName());
+        });
+  }
+
+}
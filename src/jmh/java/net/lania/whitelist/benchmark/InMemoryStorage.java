@@ -0,0 +1,115 @@
+package net.lania.whitelist.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+
+import lombok.val;
+import net.lania.whitelist.storage.WhitelistEntry;
+import net.lania.whitelist.storage.WhitelistStorage;
+
+/**
+ * Storage stub holding the whitelist in a map, so benchmarks measure the
+ * plugin code rather than a database round trip.
+ */
+public class InMemoryStorage implements WhitelistStorage {
+
+  private final ConcurrentHashMap<UUID, String> entries = new ConcurrentHashMap<>();
+
+  public InMemoryStorage(Collection<WhitelistEntry> initial) {
+    initial.forEach(entry -> entries.put(entry.uniqueId(), entry.username()));
+  }
+
+  @Override
+  public boolean init() {
+    return true;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public int findEntryByUniqueId(@NotNull UUID uniqueId) {
+    return entries.containsKey(uniqueId) ? 1 : 0;
+  }
+
+  @Override
+  public Set<UUID> findEntriesByUniqueIds(@NotNull Collection<UUID> uniqueIds) {
+    val found = new HashSet<UUID>();
+    uniqueIds.stream().filter(entries::containsKey).forEach(found::add);
+    return found;
+  }
+
+  @Override
+  public List<WhitelistEntry> findAllEntries() {
+    val result = new ArrayList<WhitelistEntry>(entries.size());
+    entries.forEach((uniqueId, username) -> result.add(new WhitelistEntry(uniqueId, username)));
+    return result;
+  }
+
+  @Override
+  public long countEntries() {
+    return entries.size();
+  }
+
+  @Override
+  public List<String> findUsernameLikeString(@NotNull String remaining, int limit) {
+    val prefix = remaining.toLowerCase(Locale.ROOT);
+    return entries.values().stream()
+        .filter(username -> username.toLowerCase(Locale.ROOT).startsWith(prefix))
+        .limit(limit)
+        .toList();
+  }
+
+  @Override
+  public List<WhitelistEntry> findUsernamePage(@NotNull String prefix, WhitelistEntry after, int limit) {
+    val key = prefix.toLowerCase(Locale.ROOT);
+    return entries.entrySet().stream()
+        .filter(entry -> entry.getValue().toLowerCase(Locale.ROOT).startsWith(key))
+        .map(entry -> new WhitelistEntry(entry.getKey(), entry.getValue()))
+        .filter(entry -> after == null || WhitelistEntry.BY_USERNAME.compare(entry, after) > 0)
+        .sorted(WhitelistEntry.BY_USERNAME)
+        .limit(limit)
+        .toList();
+  }
+
+  @Override
+  public boolean insertWhitelist(@NotNull UUID uniqueId, @NotNull String username) {
+    entries.put(uniqueId, username);
+    return true;
+  }
+
+  @Override
+  public boolean insertWhitelistBatch(@NotNull List<WhitelistEntry> batch) {
+    batch.forEach(entry -> entries.put(entry.uniqueId(), entry.username()));
+    return true;
+  }
+
+  @Override
+  public boolean deleteWhitelist(@NotNull UUID uniqueId) {
+    entries.remove(uniqueId);
+    return true;
+  }
+
+  @Override
+  public boolean deleteWhitelistBatch(@NotNull List<UUID> uniqueIds) {
+    uniqueIds.forEach(entries::remove);
+    return true;
+  }
+
+  @Override
+  public boolean streamAllEntries(int fetchSize, @NotNull Consumer<WhitelistEntry> consumer) {
+    entries.forEach((uniqueId, username) -> consumer.accept(new WhitelistEntry(uniqueId, username)));
+    return true;
+  }
+
+}
@@ -0,0 +1,92 @@
+package net.lania.whitelist.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.velocitypowered.api.event.Continuation;
+import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.proxy.Player;
+
+import lombok.val;
+import net.lania.whitelist.EventHandler;
+import net.lania.whitelist.cache.WhitelistCache;
+import net.lania.whitelist.metrics.WhitelistMetrics;
+import net.lania.whitelist.service.IdentityResolver;
+import net.lania.whitelist.service.LoginRateLimiter;
+import net.lania.whitelist.service.WhitelistService;
+
+/**
+ * Full login path: the event handler receives a LoginEvent for a stubbed
+ * player, the check is answered from the loaded cache and the returned
+ * EventTask is run until the event would be resumed.
+ */
+@State(Scope.Benchmark)
+public class LoginEventBenchmark {
+
+  private EventHandler handler;
+  private WhitelistService service;
+  private Player allowed;
+  private Player denied;
+
+  @Setup
+  public void setup() {
+    val dataDirectory = Fixtures.tempDirectory();
+    val plugin = Fixtures.plugin(dataDirectory);
+    val config = Fixtures.config(plugin, dataDirectory);
+    val entries = Fixtures.entries(10000);
+    val storage = new InMemoryStorage(entries);
+
+    val cache = new WhitelistCache(plugin, Fixtures.LOGGER, config, storage);
+    cache.refresh();
+    val metrics = new WhitelistMetrics(storage);
+    service = new WhitelistService(plugin, Fixtures.LOGGER, config, storage, cache, metrics,
+        new IdentityResolver(plugin, Fixtures.LOGGER, config));
+    service.init();
+    handler = new EventHandler(plugin, Fixtures.LOGGER, config, service,
+        new LoginRateLimiter(plugin, config, metrics));
+
+    allowed = Fixtures.player(entries.get(0).uniqueId(), entries.get(0).username());
+    denied = Fixtures.player(UUID.randomUUID(), "Stranger");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    service.shutdown();
+  }
+
+  private LoginEvent login(Player player) {
+    val event = new LoginEvent(player);
+    val resumed = new CompletableFuture<Void>();
+    handler.onPlayerLogin(event).execute(new Continuation() {
+      @Override
+      public void resume() {
+        resumed.complete(null);
+      }
+
+      @Override
+      public void resumeWithException(Throwable exception) {
+        resumed.completeExceptionally(exception);
+      }
+    });
+    resumed.join();
+    return event;
+  }
+
+  @Benchmark
+  public LoginEvent loginAllowed() {
+    return login(allowed);
+  }
+
+  @Benchmark
+  public LoginEvent loginDenied() {
+    return login(denied);
+  }
+
+}
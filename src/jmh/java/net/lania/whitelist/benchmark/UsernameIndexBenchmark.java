@@ -0,0 +1,38 @@
+package net.lania.whitelist.benchmark;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.lania.whitelist.cache.UsernameIndex;
+
+/**
+ * Username prefix search used by tab completion and /vwl list.
+ */
+@State(Scope.Benchmark)
+public class UsernameIndexBenchmark {
+
+  @Param({ "1000", "100000" })
+  private int size;
+
+  // "player1" matches a large range, "player12345" at most a few names
+  @Param({ "player1", "player12345" })
+  private String prefix;
+
+  private UsernameIndex index;
+
+  @Setup
+  public void setup() {
+    index = UsernameIndex.copyOf(Fixtures.entries(size));
+  }
+
+  @Benchmark
+  public List<String> findByPrefix() {
+    return index.findByPrefix(prefix, 10);
+  }
+
+}
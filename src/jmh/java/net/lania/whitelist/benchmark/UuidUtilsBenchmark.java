@@ -0,0 +1,31 @@
+package net.lania.whitelist.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import net.lania.whitelist.UuidUtils;
+
+/**
+ * Offline mode UUID derivation, run for every add, del and import.
+ */
+@State(Scope.Thread)
+public class UuidUtilsBenchmark {
+
+  private final String username = "SomePlayer_123";
+
+  @Benchmark
+  public UUID generateUniqueId() {
+    return UuidUtils.generateUniqueId(username);
+  }
+
+  // What generateUniqueId used to do, a new MD5 digest and byte array per call
+  @Benchmark
+  public UUID nameUuidFromBytes() {
+    return UUID.nameUUIDFromBytes(("OfflinePlayer:" + username).getBytes(StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,92 @@
+package net.lania.whitelist.benchmark;
+
+import java.util.UUID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.velocitypowered.api.proxy.Player;
+
+import lombok.val;
+import net.lania.whitelist.cache.WhitelistCache;
+import net.lania.whitelist.metrics.WhitelistMetrics;
+import net.lania.whitelist.service.IdentityResolver;
+import net.lania.whitelist.service.WhitelistService;
+
+/**
+ * Login whitelist check against the in-memory storage stub, answered from the
+ * loaded cache and through the lookup executor when the cache is not loaded.
+ */
+@State(Scope.Benchmark)
+public class WhitelistServiceBenchmark {
+
+  @Param({ "1000", "100000" })
+  private int size;
+
+  private WhitelistService cachedService;
+  private WhitelistService storageService;
+  private Player[] players;
+
+  @Setup
+  public void setup() {
+    val dataDirectory = Fixtures.tempDirectory();
+    val plugin = Fixtures.plugin(dataDirectory);
+    val config = Fixtures.config(plugin, dataDirectory);
+    val entries = Fixtures.entries(size);
+    val storage = new InMemoryStorage(entries);
+
+    val cache = new WhitelistCache(plugin, Fixtures.LOGGER, config, storage);
+    cache.refresh();
+    cachedService = new WhitelistService(plugin, Fixtures.LOGGER, config, storage, cache,
+        new WhitelistMetrics(storage), new IdentityResolver(plugin, Fixtures.LOGGER, config));
+    cachedService.init();
+
+    // A cache that is never loaded sends every check to the storage
+    val emptyCache = new WhitelistCache(plugin, Fixtures.LOGGER, config, storage);
+    storageService = new WhitelistService(plugin, Fixtures.LOGGER, config, storage, emptyCache,
+        new WhitelistMetrics(storage), new IdentityResolver(plugin, Fixtures.LOGGER, config));
+    storageService.init();
+
+    // Half of the players are whitelisted, the other half is not. On the storage
+    // path, denied players are answered from the negative cache after their
+    // first check, as they would be during a join flood.
+    players = new Player[1024];
+    for (var i = 0; i < players.length; i++) {
+      val entry = entries.get(i % entries.size());
+      players[i] = i % 2 == 0
+          ? Fixtures.player(entry.uniqueId(), entry.username())
+          : Fixtures.player(UUID.randomUUID(), "Stranger" + i);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    cachedService.shutdown();
+    storageService.shutdown();
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+
+    Player next(Player[] players) {
+      return players[next++ & (players.length - 1)];
+    }
+  }
+
+  @Benchmark
+  public int isWhitelistedCached(Cursor cursor) {
+    return cachedService.isWhitelistedAsync(cursor.next(players)).join();
+  }
+
+  @Benchmark
+  public int isWhitelistedStorage(Cursor cursor) {
+    return storageService.isWhitelistedAsync(cursor.next(players)).join();
+  }
+
+}
@@ -0,0 +1,292 @@
+package net.lania.whitelist.loadtest;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import com.velocitypowered.api.event.Continuation;
+import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.proxy.Player;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+
+import dev.dejvokep.boostedyaml.YamlDocument;
+
+import lombok.val;
+import net.kyori.adventure.text.Component;
+import net.lania.whitelist.ConfigManager;
+import net.lania.whitelist.EventHandler;
+import net.lania.whitelist.UuidUtils;
+import net.lania.whitelist.VelocityWhitelist;
+import net.lania.whitelist.cache.WhitelistCache;
+import net.lania.whitelist.metrics.LatencyHistogram;
+import net.lania.whitelist.metrics.WhitelistMetrics;
+import net.lania.whitelist.service.IdentityResolver;
+import net.lania.whitelist.service.LoginRateLimiter;
+import net.lania.whitelist.service.WhitelistService;
+import net.lania.whitelist.storage.MySqlStorage;
+import net.lania.whitelist.storage.WhitelistEntry;
+
+/**
+ * Login storm load test against an in-memory H2 database in MySQL mode.
+ * For every combination of pool size and lookup batching, a fresh database is
+ * seeded with whitelist rows, then synthetic LoginEvents are sent through the
+ * EventHandler at a fixed rate with the whitelist cache disabled, so every
+ * check reaches the database. Latencies are measured from the time each login
+ * was due, so a stalled plugin cannot hide its queueing delay.
+ *
+ * <p>
+ * Run with ./gradlew loadTest. Settings are system properties:
+ * vwl.rows, vwl.rate (logins per second), vwl.duration (seconds),
+ * vwl.poolSizes and vwl.batching (comma separated), vwl.unknownRatio (share of
+ * players not on the whitelist) and vwl.maxErrorRate (fail if exceeded, -1 to
+ * never fail).
+ */
+public final class LoginStorm {
+
+  private static final Logger LOGGER = NOPLogger.NOP_LOGGER;
+
+  private final int rows;
+  private final int rate;
+  private final int duration;
+  private final double unknownRatio;
+
+  private LoginStorm(int rows, int rate, int duration, double unknownRatio) {
+    this.rows = rows;
+    this.rate = rate;
+    this.duration = duration;
+    this.unknownRatio = unknownRatio;
+  }
+
+  public static void main(String[] args) throws Exception {
+    val storm = new LoginStorm(
+        Integer.getInteger("vwl.rows", 100_000),
+        Integer.getInteger("vwl.rate", 1000),
+        Integer.getInteger("vwl.duration", 10),
+        Double.parseDouble(System.getProperty("vwl.unknownRatio", "0.1")));
+    val poolSizes = Arrays.stream(System.getProperty("vwl.poolSizes", "5,10,20").split(","))
+        .map(String::trim).mapToInt(Integer::parseInt).toArray();
+    val batchings = Arrays.stream(System.getProperty("vwl.batching", "false,true").split(","))
+        .map(String::trim).map(Boolean::parseBoolean).toList();
+    val maxErrorRate = Double.parseDouble(System.getProperty("vwl.maxErrorRate", "-1"));
+
+    System.out.printf(Locale.ROOT, "Login storm: %d rows, %d logins/s for %d s, %.0f%% unknown players%n",
+        storm.rows, storm.rate, storm.duration, storm.unknownRatio * 100);
+    System.out.printf(Locale.ROOT, "%5s %5s | %9s | %8s %8s %8s %8s | %8s %8s | %7s %7s%n",
+        "pool", "batch", "logins/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "wait p99", "wait max",
+        "denied", "errors");
+
+    var worstErrorRate = 0.0;
+    var scenario = 0;
+    for (val poolSize : poolSizes) {
+      for (val batching : batchings) {
+        val result = storm.run(scenario++, poolSize, batching);
+        worstErrorRate = Math.max(worstErrorRate, result.errorRate());
+        System.out.printf(Locale.ROOT, "%5d %5s | %9.0f | %8.2f %8.2f %8.2f %8.2f | %8.2f %8.2f | %7d %6.2f%%%n",
+            poolSize, batching, result.throughput(),
+            millis(result.latency().getValueAtQuantile(0.5)),
+            millis(result.latency().getValueAtQuantile(0.99)),
+            millis(result.latency().getValueAtQuantile(0.999)),
+            millis(result.latency().getMaxMicros()),
+            millis(result.poolWait().getValueAtQuantile(0.99)),
+            millis(result.poolWait().getMaxMicros()),
+            result.denied(), result.errorRate() * 100);
+      }
+    }
+
+    if (maxErrorRate >= 0 && worstErrorRate > maxErrorRate) {
+      System.err.printf(Locale.ROOT, "Error rate %.2f%% exceeds the allowed %.2f%%%n",
+          worstErrorRate * 100, maxErrorRate * 100);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Outcome of one scenario.
+   */
+  private record Result(LatencyHistogram latency, LatencyHistogram poolWait, double throughput, long denied,
+      double errorRate) {
+  }
+
+  /**
+   * Seeds a fresh database and sends logins to it at the configured rate.
+   */
+  private Result run(int scenario, int poolSize, boolean batching) throws IOException, InterruptedException {
+    val dataDirectory = Files.createTempDirectory("vwl-loadtest");
+    val plugin = new VelocityWhitelist(null, LOGGER, dataDirectory);
+    val config = new ConfigManager(plugin, LOGGER, dataDirectory);
+    config.initConfig();
+
+    // The loaded sections are immutable, change the file and read it again
+    val file = YamlDocument.create(dataDirectory.resolve("config.yml").toFile());
+    file.set("database.jdbcUrl", "jdbc:h2:mem:vwl" + scenario + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE");
+    file.set("database.driverClassName", "org.h2.Driver");
+    file.set("database.user", "sa");
+    file.set("database.password", "");
+    file.set("database.createTables", true);
+    file.set("database.changeLogTable", "");
+    file.set("database.maxPoolSize", poolSize);
+    file.set("database.minIdle", poolSize);
+    file.set("cache.enabled", false);
+    file.set("login.batchLookups", batching);
+    file.set("login.maxConcurrentLookups", poolSize);
+    file.save();
+    if (!config.reloadConfig()) {
+      throw new IllegalStateException("Failed to reload the load test configuration");
+    }
+    config.setPluginEnabled(true);
+
+    val poolWait = new LatencyHistogram();
+    val storage = new MySqlStorage(plugin, LOGGER, config);
+    storage.setMetricsTrackerFactory((poolName, poolStats) -> new IMetricsTracker() {
+      @Override
+      public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        poolWait.recordNanos(elapsedAcquiredNanos);
+      }
+    });
+    if (!storage.init()) {
+      throw new IllegalStateException("Failed to open the H2 database");
+    }
+
+    val whitelisted = seed(storage);
+    val metrics = new WhitelistMetrics(storage);
+    val service = new WhitelistService(plugin, LOGGER, config, storage,
+        new WhitelistCache(plugin, LOGGER, config, storage), metrics, new IdentityResolver(plugin, LOGGER, config));
+    service.init();
+    val handler = new EventHandler(plugin, LOGGER, config, service, new LoginRateLimiter(plugin, config, metrics));
+    val failedMessage = config.getLocalizedMessages().get(config.getDefaultLocale()).getFailedToCheckWhitelist();
+
+    try {
+      // Let the JIT and the pool settle before measuring
+      drive(handler, whitelisted, failedMessage, poolWait, Math.max(1, rate / 2));
+      poolWait.reset();
+      return drive(handler, whitelisted, failedMessage, poolWait, rate * duration);
+    } finally {
+      service.shutdown();
+      storage.close();
+    }
+  }
+
+  /**
+   * Inserts the whitelist rows in batches.
+   *
+   * @return The whitelisted players.
+   */
+  private List<WhitelistEntry> seed(MySqlStorage storage) {
+    val entries = new ArrayList<WhitelistEntry>(rows);
+    for (var i = 0; i < rows; i++) {
+      val username = "Player" + i;
+      entries.add(new WhitelistEntry(UuidUtils.generateUniqueId(username), username));
+    }
+    for (var from = 0; from < entries.size(); from += 1000) {
+      if (!storage.insertWhitelistBatch(entries.subList(from, Math.min(entries.size(), from + 1000)))) {
+        throw new IllegalStateException("Failed to seed the whitelist");
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Sends logins at a fixed rate, without waiting for earlier logins to
+   * finish, and waits until every login was resumed.
+   */
+  private Result drive(EventHandler handler, List<WhitelistEntry> whitelisted, Component failedMessage,
+      LatencyHistogram poolWait, int logins) throws InterruptedException {
+    val latency = new LatencyHistogram();
+    val denied = new LongAdder();
+    val errors = new LongAdder();
+    val lastDone = new AtomicLong();
+    val done = new CountDownLatch(logins);
+    val periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+    val random = new Random(42);
+
+    val start = System.nanoTime();
+    for (var i = 0; i < logins; i++) {
+      val due = start + i * periodNanos;
+      while (System.nanoTime() < due) {
+        LockSupport.parkNanos(due - System.nanoTime());
+      }
+
+      val player = random.nextDouble() < unknownRatio
+          ? player(UUID.randomUUID(), "Stranger" + i)
+          : player(whitelisted.get(random.nextInt(whitelisted.size())));
+      val event = new LoginEvent(player);
+      final Runnable finish = () -> {
+        latency.recordSince(due);
+        if (!event.getResult().isAllowed()) {
+          if (event.getResult().getReasonComponent().filter(failedMessage::equals).isPresent()) {
+            errors.increment();
+          } else {
+            denied.increment();
+          }
+        }
+        lastDone.accumulateAndGet(System.nanoTime(), Math::max);
+        done.countDown();
+      };
+
+      val task = handler.onPlayerLogin(event);
+      if (task == null) {
+        finish.run();
+        continue;
+      }
+      task.execute(new Continuation() {
+        @Override
+        public void resume() {
+          finish.run();
+        }
+
+        @Override
+        public void resumeWithException(Throwable exception) {
+          errors.increment();
+          finish.run();
+        }
+      });
+    }
+
+    if (!done.await(60, TimeUnit.SECONDS)) {
+      System.err.printf("%d logins did not finish within 60 s%n", done.getCount());
+    }
+
+    val elapsedSeconds = (lastDone.get() - start) / 1e9;
+    val completed = logins - done.getCount();
+    return new Result(latency, poolWait, completed / Math.max(elapsedSeconds, 1e-9),
+        denied.sum(), errors.sum() / (double) logins);
+  }
+
+  private static Player player(WhitelistEntry entry) {
+    return player(entry.uniqueId(), entry.username());
+  }
+
+  /**
+   * Creates a Player stub answering only getUniqueId and getUsername.
+   */
+  private static Player player(UUID uniqueId, String username) {
+    return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] { Player.class },
+        (proxy, method, args) -> switch (method.getName()) {
+          case "getUniqueId" -> uniqueId;
+          case "getUsername" -> username;
+          case "hashCode" -> System.identityHashCode(proxy);
+          case "equals" -> proxy == args[0];
+          case "toString" -> "Player[" + username + "]";
+          default -> throw new UnsupportedOperationException(method.getName());
+        });
+  }
+
+  private static double millis(long micros) {
+    return micros / 1000.0;
+  }
+
+}
@@ -3,9 +3,12 @@ package net.lania.whitelist;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 
 import org.slf4j.Logger;
 
@@ -19,8 +22,19 @@ import lombok.Getter;
 import lombok.val;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.lania.whitelist.config.BreakerConfig;
+import net.lania.whitelist.config.CacheConfig;
+import net.lania.whitelist.config.ConfigSnapshot;
+import net.lania.whitelist.config.ConfigWriter;
 import net.lania.whitelist.config.DatabaseConfig;
+import net.lania.whitelist.config.IdentityConfig;
+import net.lania.whitelist.config.LoginConfig;
 import net.lania.whitelist.config.Messages;
+import net.lania.whitelist.config.MetricsConfig;
+import net.lania.whitelist.config.RateLimitConfig;
+import net.lania.whitelist.config.StorageConfig;
+import net.lania.whitelist.config.SuggestionConfig;
+import net.lania.whitelist.config.TransferConfig;
 
 @Getter
 public class ConfigManager {
@@ -33,17 +47,17 @@ public class ConfigManager {
   private final File configFile;
   @Getter(lombok.AccessLevel.NONE)
   private YamlDocument config;
+  @Getter(lombok.AccessLevel.NONE)
+  private ConfigWriter writer;
 
+  // Runtime changes made within this delay are written to the file together
+  private static final long WRITE_DELAY_MILLIS = 1000;
+
+  // Swapped as a whole on every change, readers never see a half-loaded configuration
   @Getter
-  private boolean debugEnabled = false;
-  @Getter
-  private boolean pluginEnabled = false;
-  @Getter
-  private String defaultLocale = "en";
-  @Getter
-  private DatabaseConfig database = new DatabaseConfig();
-  @Getter
-  private Map<String, Messages> localizedMessages = new HashMap<>();
+  private volatile ConfigSnapshot snapshot = ConfigSnapshot.defaults();
+  @Getter(lombok.AccessLevel.NONE)
+  private final List<BiConsumer<ConfigSnapshot, ConfigSnapshot>> reloadListeners = new CopyOnWriteArrayList<>();
 
   public ConfigManager(VelocityWhitelist plugin, Logger logger, Path dataDirectory) {
     this.plugin = plugin;
@@ -63,6 +77,7 @@ public class ConfigManager {
 
       config.update();
       config.save();
+      writer = new ConfigWriter(logger, config, configFile.toPath(), this, WRITE_DELAY_MILLIS);
 
       loadConfig();
     } catch (IOException e) {
@@ -71,33 +86,63 @@ public class ConfigManager {
   }
 
   private void modifyConfigFile(String path, Object value) {
-    config.set(path, value);
-    try {
-      config.save();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    writer.set(path, value);
+  }
+
+  /**
+   * Writes the runtime changes that are still pending to the config file and
+   * stops the background writer. Called on proxy shutdown.
+   */
+  public void shutdown() {
+    if (writer != null) {
+      writer.close();
     }
   }
 
   /**
    * Reloads the plugin configuration.
    * This method reloads the configuration from the config file and updates the
-   * plugin's settings.
+   * plugin's settings. The new settings are published at once, then the reload
+   * listeners are told about the change.
    */
   public boolean reloadConfig() {
     plugin.logDebug("Reloading configuration");
 
+    final ConfigSnapshot previous;
     try {
-      config.reload();
-      loadConfig();
+      synchronized (this) {
+        previous = snapshot;
+        // Runtime changes not written yet would be lost by reading the file
+        writer.flush();
+        config.reload();
+        loadConfig();
+      }
     } catch (IOException e) {
       logger.error("Error while reloading configuration", e);
       return false;
     }
 
+    val current = snapshot;
+    for (val listener : reloadListeners) {
+      try {
+        listener.accept(previous, current);
+      } catch (RuntimeException e) {
+        logger.error("Error while applying the reloaded configuration", e);
+      }
+    }
     return true;
   }
 
+  /**
+   * Registers a listener called after every successful reload, with the
+   * previous and the new snapshot, on the thread that reloaded.
+   *
+   * @param listener The listener.
+   */
+  public void addReloadListener(BiConsumer<ConfigSnapshot, ConfigSnapshot> listener) {
+    reloadListeners.add(listener);
+  }
+
   /**
    * Loads the configuration from the config file.
    * This method reads the config file and loads the properties into a Properties
@@ -105,21 +150,98 @@ public class ConfigManager {
    *
    * @return The Properties object containing the configuration.
    */
-  public void loadConfig() {
+  public synchronized void loadConfig() {
     plugin.logDebug("Loading configuration");
 
-    debugEnabled = config.getBoolean("debug");
-    pluginEnabled = config.getBoolean("enabled");
-    defaultLocale = config.getString("defaultLocale");
+    val debugEnabled = config.getBoolean("debug");
+    val defaultLocale = config.getString("defaultLocale", "en");
 
-    loadDatabaseCfg();
-    loadMessages();
+    snapshot = new ConfigSnapshot(
+        debugEnabled,
+        config.getBoolean("enabled"),
+        defaultLocale,
+        loadStorageCfg(),
+        loadDatabaseCfg(),
+        loadLoginCfg(),
+        loadRateLimitCfg(),
+        loadCacheCfg(),
+        loadBreakerCfg(),
+        loadSuggestionCfg(),
+        loadTransferCfg(),
+        loadIdentityCfg(),
+        loadMetricsCfg(),
+        loadMessages(defaultLocale));
 
     logger.info("Debug mode is {}", debugEnabled ? "enabled" : "disabled");
   }
 
-  private void loadDatabaseCfg() {
+  public boolean isDebugEnabled() {
+    return snapshot.debugEnabled();
+  }
+
+  public boolean isPluginEnabled() {
+    return snapshot.pluginEnabled();
+  }
+
+  public String getDefaultLocale() {
+    return snapshot.defaultLocale();
+  }
+
+  public StorageConfig getStorage() {
+    return snapshot.storage();
+  }
+
+  public DatabaseConfig getDatabase() {
+    return snapshot.database();
+  }
+
+  public LoginConfig getLogin() {
+    return snapshot.login();
+  }
+
+  public RateLimitConfig getRateLimit() {
+    return snapshot.rateLimit();
+  }
+
+  public CacheConfig getCache() {
+    return snapshot.cache();
+  }
+
+  public BreakerConfig getBreaker() {
+    return snapshot.breaker();
+  }
+
+  public SuggestionConfig getSuggestions() {
+    return snapshot.suggestions();
+  }
+
+  public TransferConfig getTransfer() {
+    return snapshot.transfer();
+  }
+
+  public IdentityConfig getIdentity() {
+    return snapshot.identity();
+  }
+
+  public MetricsConfig getMetrics() {
+    return snapshot.metrics();
+  }
+
+  public Map<String, Messages> getLocalizedMessages() {
+    return snapshot.localizedMessages();
+  }
+
+  private StorageConfig loadStorageCfg() {
+    val section = config.getSection("storage");
+    val storage = StorageConfig.builder();
+    storage.type(section.getString("type"));
+    storage.localFile(section.getString("localFile"));
+    return storage.build();
+  }
+
+  private DatabaseConfig loadDatabaseCfg() {
     val section = config.getSection("database");
+    val database = DatabaseConfig.builder();
     // construct the url
     val urlFormat = "jdbc:mariadb://%s:%s/%s%s";
     val host = section.getString("host");
@@ -128,45 +250,172 @@ public class ConfigManager {
     val params = section.getString("params");
     val url = String.format(urlFormat, host, port, dbName, params);
 
-    database.setUrl(url);
-    database.setUser(section.getString("user"));
-    database.setPassword(section.getString("password"));
-    database.setWhitelistTable(section.getString("whitelistTable"));
-    database.setCreateTables(section.getBoolean("createTables"));
-    database.setMaxPoolSize(section.getInt("maxPoolSize"));
-    database.setMinIdle(section.getInt("minIdle"));
-    database.setConnectionTimeout(section.getLong("connectionTimeout"));
-    database.setIdleTimeout(section.getLong("idleTimeout"));
-    database.setMaxLifetime(section.getLong("maxLifetime"));
-    database.setCacheStmt(section.getBoolean("cacheStmt"));
-    database.setPrepStmtCacheSize(section.getInt("prepStmtCacheSize"));
-    database.setPrepStmtCacheSqlLimit(section.getInt("prepStmtCacheSqlLimit"));
-    database.setUseServerPrepStmts(section.getBoolean("useServerPrepStmts"));
-    database.setUseLocalSessionState(section.getBoolean("useLocalSessionState"));
-    database.setCacheServerConfiguration(section.getBoolean("cacheServerConfiguration"));
-    database.setElideSetAutoCommit(section.getBoolean("elideSetAutoCommit"));
-    database.setMaintainTimeStats(section.getBoolean("maintainTimeStats"));
-  }
-
-  private void loadMessages() {
-    localizedMessages.clear();
+    // A full JDBC URL replaces the one built from host, port, database and params
+    val jdbcUrl = section.getString("jdbcUrl", "").trim();
+    database.url(jdbcUrl.isEmpty() ? url : jdbcUrl);
+    // Empty means the bundled MariaDB driver, whose package is relocated in the plugin jar
+    val driverClassName = section.getString("driverClassName", "").trim();
+    database.driverClassName(driverClassName.isEmpty() ? "org.mariadb.jdbc.Driver" : driverClassName);
+    database.user(section.getString("user"));
+    database.password(section.getString("password"));
+    database.whitelistTable(section.getString("whitelistTable"));
+    database.createTables(section.getBoolean("createTables"));
+    database.binaryUuids(section.getBoolean("binaryUuids"));
+    database.migrationChunkSize(Math.max(1, section.getInt("migrationChunkSize")));
+
+    // The table name ends up in the SQL query, only accept plain identifiers
+    val changeLogTable = section.getString("changeLogTable", "").trim();
+    if (!changeLogTable.isEmpty() && !changeLogTable.matches("[A-Za-z0-9_]+")) {
+      logger.warn("Ignoring invalid database.changeLogTable '{}'", changeLogTable);
+      database.changeLogTable("");
+    } else {
+      database.changeLogTable(changeLogTable);
+    }
+    database.changeLogRetention(Math.max(60, section.getLong("changeLogRetention")));
+    database.maxPoolSize(section.getInt("maxPoolSize"));
+    database.minIdle(section.getInt("minIdle"));
+    database.connectionTimeout(section.getLong("connectionTimeout"));
+    database.idleTimeout(section.getLong("idleTimeout"));
+    database.maxLifetime(section.getLong("maxLifetime"));
+    database.cacheStmt(section.getBoolean("cacheStmt"));
+    database.prepStmtCacheSize(section.getInt("prepStmtCacheSize"));
+    database.prepStmtCacheSqlLimit(section.getInt("prepStmtCacheSqlLimit"));
+    database.useServerPrepStmts(section.getBoolean("useServerPrepStmts"));
+    database.useLocalSessionState(section.getBoolean("useLocalSessionState"));
+    database.cacheServerConfiguration(section.getBoolean("cacheServerConfiguration"));
+    database.elideSetAutoCommit(section.getBoolean("elideSetAutoCommit"));
+    database.maintainTimeStats(section.getBoolean("maintainTimeStats"));
+    database.loginReservedConnections(Math.max(0, section.getInt("loginReservedConnections", 4)));
+    database.suggestionConnections(Math.max(0, section.getInt("suggestionConnections", 2)));
+    database.adminConnections(Math.max(0, section.getInt("adminConnections", 0)));
+    database.adminWaitTimeout(Math.max(0, section.getLong("adminWaitTimeout", 5000L)));
+    return database.build();
+  }
+
+  private LoginConfig loadLoginCfg() {
+    val section = config.getSection("login");
+    val login = LoginConfig.builder();
+    login.lookupTimeout(section.getLong("lookupTimeout"));
+    login.allowOnTimeout("allow".equalsIgnoreCase(section.getString("timeoutPolicy")));
+    login.maxConcurrentLookups(Math.max(1, section.getInt("maxConcurrentLookups")));
+    login.maxQueuedLookups(Math.max(1, section.getInt("maxQueuedLookups")));
+    login.batchLookups(section.getBoolean("batchLookups"));
+    login.batchWindow(Math.max(1, section.getLong("batchWindow")));
+    login.maxBatchSize(Math.max(1, section.getInt("maxBatchSize")));
+
+    val preLoginCheck = section.getString("preLoginCheck", "off").trim().toLowerCase(Locale.ROOT);
+    if (!preLoginCheck.equals("off") && !preLoginCheck.equals("offline") && !preLoginCheck.equals("online")) {
+      logger.warn("Ignoring invalid login.preLoginCheck '{}'", preLoginCheck);
+      login.preLoginCheck("off");
+    } else {
+      login.preLoginCheck(preLoginCheck);
+    }
+    return login.build();
+  }
+
+  private RateLimitConfig loadRateLimitCfg() {
+    val section = config.getSection("rateLimit");
+    val rateLimit = RateLimitConfig.builder();
+    rateLimit.enabled(section.getBoolean("enabled"));
+    rateLimit.perMinute(Math.max(1, section.getInt("perMinute")));
+    rateLimit.burst(Math.max(1, section.getInt("burst")));
+    rateLimit.evictInterval(Math.max(1, section.getLong("evictInterval")));
+    return rateLimit.build();
+  }
+
+  private CacheConfig loadCacheCfg() {
+    val section = config.getSection("cache");
+    val cache = CacheConfig.builder();
+    cache.enabled(section.getBoolean("enabled"));
+    cache.refreshInterval(Math.max(1, section.getLong("refreshInterval")));
+    cache.pollInterval(Math.max(1, section.getLong("pollInterval")));
+
+    // The column name ends up in the SQL query, only accept plain identifiers
+    val changeColumn = section.getString("changeColumn", "").trim();
+    if (!changeColumn.isEmpty() && !changeColumn.matches("[A-Za-z0-9_]+")) {
+      logger.warn("Ignoring invalid cache.changeColumn '{}'", changeColumn);
+      cache.changeColumn("");
+    } else {
+      cache.changeColumn(changeColumn);
+    }
+
+    cache.negativeTtl(section.getLong("negativeTtl"));
+    cache.negativeMaxSize(Math.max(1, section.getInt("negativeMaxSize")));
+    cache.snapshotFile(section.getString("snapshotFile", "").trim());
+    return cache.build();
+  }
+
+  private BreakerConfig loadBreakerCfg() {
+    val section = config.getSection("breaker");
+    val breaker = BreakerConfig.builder();
+    breaker.enabled(section.getBoolean("enabled"));
+    breaker.failureThreshold(Math.max(1, section.getInt("failureThreshold")));
+    breaker.slowCallThreshold(Math.max(0, section.getLong("slowCallThreshold")));
+    breaker.openDuration(Math.max(1000, section.getLong("openDuration")));
+    breaker.allowWhenOpen("allow".equalsIgnoreCase(section.getString("openPolicy")));
+    breaker.lastKnownSize(Math.max(0, section.getInt("lastKnownSize")));
+    return breaker.build();
+  }
+
+  private SuggestionConfig loadSuggestionCfg() {
+    val section = config.getSection("suggestions");
+    val suggestions = SuggestionConfig.builder();
+    suggestions.threads(Math.max(1, section.getInt("threads")));
+    suggestions.maxQueued(Math.max(1, section.getInt("maxQueued")));
+    suggestions.debounce(Math.max(0, section.getLong("debounce")));
+    return suggestions.build();
+  }
+
+  private TransferConfig loadTransferCfg() {
+    val section = config.getSection("transfer");
+    val transfer = TransferConfig.builder();
+    transfer.batchSize(Math.max(1, section.getInt("batchSize")));
+    transfer.progressInterval(Math.max(1, section.getInt("progressInterval")));
+    return transfer.build();
+  }
+
+  private IdentityConfig loadIdentityCfg() {
+    val section = config.getSection("identity");
+    val identity = IdentityConfig.builder();
+    identity.onlineMode("online".equalsIgnoreCase(section.getString("mode")));
+    identity.profileEndpoint(section.getString("profileEndpoint", "").trim());
+    identity.batchSize(Math.max(1, section.getInt("batchSize")));
+    identity.requestTimeout(Math.max(100, section.getLong("requestTimeout")));
+    identity.cacheSize(Math.max(0, section.getInt("cacheSize")));
+    return identity.build();
+  }
+
+  private MetricsConfig loadMetricsCfg() {
+    val section = config.getSection("metrics");
+    val metrics = MetricsConfig.builder();
+    metrics.exportFile(section.getString("exportFile", "").trim());
+    metrics.exportInterval(Math.max(1, section.getLong("exportInterval")));
+    metrics.httpPort(Math.max(0, section.getInt("httpPort")));
+    return metrics.build();
+  }
 
+  private Map<String, Messages> loadMessages(String defaultLocale) {
     val kicked = initComp("messages.kicked");
+    val failedToCheckWhitelist = initComp("messages.failedToCheckWhitelist");
     val insufficientPermission = initComp("messages.insufficientPermission");
+    val rateLimited = initComp("messages.rateLimited");
 
-    val messages = new Messages()
-        .setKicked(kicked)
-        .setInsufficientPermission(insufficientPermission);
-    localizedMessages.put(defaultLocale, messages);
+    val messages = Messages.builder()
+        .kicked(kicked)
+        .failedToCheckWhitelist(failedToCheckWhitelist)
+        .insufficientPermission(insufficientPermission)
+        .rateLimited(rateLimited)
+        .build();
+    return Map.of(defaultLocale, messages);
   }
 
-  public void setDebugMode(boolean enabled) {
-    debugEnabled = enabled;
+  public synchronized void setDebugMode(boolean enabled) {
+    snapshot = snapshot.withDebugEnabled(enabled);
     modifyConfigFile("debug", enabled);
   }
 
-  public void setPluginEnabled(boolean enabled) {
-    pluginEnabled = enabled;
+  public synchronized void setPluginEnabled(boolean enabled) {
+    snapshot = snapshot.withPluginEnabled(enabled);
     modifyConfigFile("enabled", enabled);
   }
 
@@ -2,12 +2,16 @@ package net.lania.whitelist;
 
 import org.slf4j.Logger;
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.ResultedEvent.ComponentResult;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.event.connection.PreLoginEvent;
+import com.velocitypowered.api.event.connection.PreLoginEvent.PreLoginComponentResult;
 
 import lombok.RequiredArgsConstructor;
 import lombok.val;
+import net.lania.whitelist.service.LoginRateLimiter;
 import net.lania.whitelist.service.WhitelistService;
 
 @RequiredArgsConstructor
@@ -21,29 +25,72 @@ public class EventHandler {
 
   private final WhitelistService whitelistService;
 
+  private final LoginRateLimiter rateLimiter;
+
   /**
    * Event listener for the LoginEvent.
    * This method is called when a player attempts to log in.
    * It checks if the player is whitelisted and denies the connection if they are
-   * not.
+   * not. The lookup runs asynchronously, the event is resumed once it finishes.
    *
    * @param event The LoginEvent.
+   * @return The EventTask resuming the event once the lookup is done, or null if
+   *         no lookup is needed.
    */
   @Subscribe
-  public void onPlayerLogin(LoginEvent event) {
+  public EventTask onPlayerLogin(LoginEvent event) {
     // Validate that the player object is not null
     val player = event.getPlayer();
     if (player == null) {
       logger.error("LoginEvent triggered with a null player.");
+      return null;
+    }
+
+    plugin.logDebug("Player login: {}", player.getUsername());
+
+    // Nothing to check if the whitelist is disabled
+    if (!configHandler.isPluginEnabled()) {
+      return null;
+    }
+
+    return EventTask.resumeWhenComplete(whitelistService.isWhitelistedAsync(player)
+        .thenAccept(result -> {
+          if (result == 1) {
+            return;
+          }
+
+          val messages = configHandler.getLocalizedMessages().get(configHandler.getDefaultLocale());
+          event.setResult(ComponentResult
+              .denied(result == -1 ? messages.getFailedToCheckWhitelist() : messages.getKicked()));
+        }));
+  }
+
+  /**
+   * Event listener for the PreLoginEvent.
+   * This method is called before the player is authenticated. Addresses
+   * attempting to log in too often are refused here, before any lookup. If the
+   * pre-login check is enabled, players known not to be whitelisted are denied
+   * here too, which saves the authentication and encryption work for them.
+   * Everyone else is checked again on login.
+   *
+   * @param event The PreLoginEvent.
+   */
+  @Subscribe
+  public void onPlayerPreLogin(PreLoginEvent event) {
+    if (!configHandler.isPluginEnabled() || !event.getResult().isAllowed()) {
       return;
     }
 
-    plugin.logDebug("Player login: " + player.getUsername());
+    val messages = configHandler.getLocalizedMessages().get(configHandler.getDefaultLocale());
+    val address = event.getConnection().getRemoteAddress().getAddress();
+    if (address != null && !rateLimiter.tryAcquire(address)) {
+      plugin.logDebug("Rate limited login of {} from {}", event.getUsername(), address.getHostAddress());
+      event.setResult(PreLoginComponentResult.denied(messages.getRateLimited()));
+      return;
+    }
 
-    // Check if the whitelist is enabled and if the player is not whitelisted
-    if (configHandler.isPluginEnabled() && !whitelistService.isWhitelisted(player)) {
-      event.setResult(ComponentResult
-          .denied(configHandler.getLocalizedMessages().get(configHandler.getDefaultLocale()).getKicked()));
+    if (whitelistService.isDeniedBeforeLogin(event.getUsername())) {
+      event.setResult(PreLoginComponentResult.denied(messages.getKicked()));
     }
   }
 }
@@ -1,5 +1,10 @@
 package net.lania.whitelist;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.UUID;
 
 import org.jetbrains.annotations.NotNull;
@@ -10,10 +15,132 @@ import lombok.experimental.UtilityClass;
 @UtilityClass
 public class UuidUtils {
 
-  private static final String UUID_SOURCE_FORMAT = "OfflinePlayer:%s";
+  private static final byte[] OFFLINE_PREFIX = "OfflinePlayer:".getBytes(StandardCharsets.UTF_8);
 
+  // MessageDigest is not thread-safe and costly to look up, keep one per thread
+  private static final ThreadLocal<OfflineHasher> OFFLINE_HASHER = ThreadLocal.withInitial(OfflineHasher::new);
+
+  /**
+   * Derives the UUID an offline mode proxy gives to a player name, the
+   * version 3 UUID of "OfflinePlayer:" followed by the name in UTF-8.
+   * Reuses a per-thread digest and buffers, so ASCII names only allocate the
+   * returned UUID.
+   *
+   * @param username The player name.
+   * @return The offline UUID.
+   */
   public static UUID generateUniqueId(@NotNull String username) {
-    val source = String.format(UUID_SOURCE_FORMAT, username);
-    return UUID.nameUUIDFromBytes(source.getBytes());
+    return OFFLINE_HASHER.get().hash(username);
+  }
+
+  /**
+   * Parses a UUID with or without dashes, as returned by the Mojang APIs.
+   *
+   * @param value The UUID string.
+   * @return The UUID.
+   * @throws IllegalArgumentException If the string is not a UUID.
+   */
+  public static UUID parse(@NotNull String value) {
+    if (value.length() != 32) {
+      return UUID.fromString(value);
+    }
+    try {
+      return new UUID(Long.parseUnsignedLong(value, 0, 16, 16), Long.parseUnsignedLong(value, 16, 32, 16));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid UUID string: " + value, e);
+    }
+  }
+
+  /**
+   * Converts a UUID to its 16-byte big-endian form, as stored in BINARY(16)
+   * columns.
+   *
+   * @param uniqueId The UUID to convert.
+   * @return A new 16-byte array.
+   */
+  public static byte[] toBytes(@NotNull UUID uniqueId) {
+    return ByteBuffer.allocate(16)
+        .putLong(uniqueId.getMostSignificantBits())
+        .putLong(uniqueId.getLeastSignificantBits())
+        .array();
+  }
+
+  /**
+   * Converts a 16-byte big-endian UUID back into a UUID.
+   *
+   * @param bytes The 16 bytes of the UUID.
+   * @return The UUID.
+   */
+  public static UUID fromBytes(@NotNull byte[] bytes) {
+    val buffer = ByteBuffer.wrap(bytes);
+    return new UUID(buffer.getLong(), buffer.getLong());
+  }
+
+  /**
+   * MD5 digest and buffers of one thread.
+   */
+  private static final class OfflineHasher {
+
+    private final MessageDigest md5;
+    private final byte[] digest = new byte[16];
+    private byte[] input = new byte[64];
+
+    private OfflineHasher() {
+      try {
+        md5 = MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException e) {
+        throw new InternalError("MD5 not supported", e);
+      }
+      System.arraycopy(OFFLINE_PREFIX, 0, input, 0, OFFLINE_PREFIX.length);
+    }
+
+    private UUID hash(String username) {
+      if (!encodeAscii(username)) {
+        md5.update(OFFLINE_PREFIX);
+        md5.update(username.getBytes(StandardCharsets.UTF_8));
+      }
+      try {
+        md5.digest(digest, 0, digest.length);
+      } catch (DigestException e) {
+        throw new IllegalStateException(e);
+      }
+
+      // Same version and variant bits as UUID.nameUUIDFromBytes
+      digest[6] = (byte) ((digest[6] & 0x0f) | 0x30);
+      digest[8] = (byte) ((digest[8] & 0x3f) | 0x80);
+
+      var msb = 0L;
+      var lsb = 0L;
+      for (var i = 0; i < 8; i++) {
+        msb = (msb << 8) | (digest[i] & 0xff);
+        lsb = (lsb << 8) | (digest[i + 8] & 0xff);
+      }
+      return new UUID(msb, lsb);
+    }
+
+    /**
+     * Feeds the prefix and an ASCII name to the digest from the reused buffer.
+     *
+     * @return False if the name is not ASCII and was not fed.
+     */
+    private boolean encodeAscii(String username) {
+      val length = OFFLINE_PREFIX.length + username.length();
+      if (length > input.length) {
+        val grown = new byte[Math.max(length, input.length * 2)];
+        System.arraycopy(OFFLINE_PREFIX, 0, grown, 0, OFFLINE_PREFIX.length);
+        input = grown;
+      }
+
+      for (var i = 0; i < username.length(); i++) {
+        val c = username.charAt(i);
+        if (c >= 0x80) {
+          return false;
+        }
+        input[OFFLINE_PREFIX.length + i] = (byte) c;
+      }
+      md5.update(input, 0, length);
+      return true;
+    }
+
   }
 }
@@ -1,6 +1,7 @@
 package net.lania.whitelist;
 
 import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 
@@ -10,14 +11,25 @@ import com.mojang.brigadier.arguments.StringArgumentType;
 import com.velocitypowered.api.command.BrigadierCommand;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
 
+import lombok.Getter;
 import lombok.val;
+import net.lania.whitelist.cache.WhitelistCache;
 import net.lania.whitelist.handler.VwlCommandHandler;
+import net.lania.whitelist.metrics.MetricsExporter;
+import net.lania.whitelist.metrics.WhitelistMetrics;
+import net.lania.whitelist.service.IdentityResolver;
+import net.lania.whitelist.service.LoginRateLimiter;
 import net.lania.whitelist.service.WhitelistService;
+import net.lania.whitelist.service.WhitelistTransferService;
+import net.lania.whitelist.storage.CircuitBreakerStorage;
+import net.lania.whitelist.storage.LocalFileStorage;
 import net.lania.whitelist.storage.MySqlStorage;
+import net.lania.whitelist.storage.WhitelistStorage;
 
 /**
  * The main class for the VelocityWhitelist plugin.
@@ -27,13 +39,27 @@ import net.lania.whitelist.storage.MySqlStorage;
 @Plugin(id = BuildConstants.ID, name = BuildConstants.NAME, version = BuildConstants.VERSION, url = BuildConstants.URL, description = BuildConstants.DESCRIPTION, authors = BuildConstants.AUTHORS)
 public class VelocityWhitelist {
 
+  // Backoff between attempts to open the storage in the background
+  private static final long STORAGE_RETRY_MIN_MILLIS = 5000;
+  private static final long STORAGE_RETRY_MAX_MILLIS = 300000;
+
+  @Getter
   private final ProxyServer server;
   private final Logger logger;
+  @Getter
+  private final Path dataDirectory;
   private final ConfigManager configHandler;
-  private final MySqlStorage storage;
-  private final WhitelistService whitelistService;
-  private final VwlCommandHandler vwlCommandHandler;
-  private final EventHandler eventHandler;
+  private WhitelistStorage storage;
+  private WhitelistCache whitelistCache;
+  private WhitelistMetrics metrics;
+  private MetricsExporter metricsExporter;
+  private IdentityResolver identityResolver;
+  private LoginRateLimiter rateLimiter;
+  private WhitelistService whitelistService;
+  private WhitelistTransferService transferService;
+  private VwlCommandHandler vwlCommandHandler;
+  private EventHandler eventHandler;
+  private volatile boolean shuttingDown;
 
   /**
    * Constructor for the VelocityWhitelist plugin.
@@ -50,11 +76,79 @@ public class VelocityWhitelist {
 
     this.server = server;
     this.logger = logger;
+    this.dataDirectory = dataDirectory;
     this.configHandler = new ConfigManager(this, logger, dataDirectory);
-    this.storage = new MySqlStorage(this, logger, configHandler);
-    this.whitelistService = new WhitelistService(this, configHandler, storage);
-    this.vwlCommandHandler = new VwlCommandHandler(this, configHandler, whitelistService);
-    this.eventHandler = new EventHandler(this, logger, configHandler, whitelistService);
+  }
+
+  /**
+   * Creates the storage backend selected in the configuration and the
+   * components depending on it.
+   * Must be called once the configuration is loaded.
+   */
+  private void createComponents() {
+    val storageCfg = configHandler.getStorage();
+    if (storageCfg.isLocal()) {
+      storage = new LocalFileStorage(this, logger, dataDirectory.resolve(storageCfg.getLocalFile()));
+    } else {
+      val mySqlStorage = new MySqlStorage(this, logger, configHandler);
+      configHandler.addReloadListener(
+          (previous, current) -> mySqlStorage.applyReload(previous.database(), current.database()));
+      storage = mySqlStorage;
+    }
+    if (configHandler.getBreaker().isEnabled()) {
+      storage = new CircuitBreakerStorage(this, logger, storage, configHandler.getBreaker());
+    }
+
+    whitelistCache = new WhitelistCache(this, logger, configHandler, storage);
+    metrics = new WhitelistMetrics(storage);
+    metricsExporter = new MetricsExporter(this, logger, configHandler, metrics);
+    identityResolver = new IdentityResolver(this, logger, configHandler);
+    configHandler.addReloadListener((previous, current) -> {
+      if (!previous.identity().equals(current.identity())) {
+        identityResolver.clearCache();
+      }
+    });
+    whitelistService = new WhitelistService(this, logger, configHandler, storage, whitelistCache, metrics,
+        identityResolver);
+    transferService = new WhitelistTransferService(this, logger, configHandler, storage, whitelistCache,
+        identityResolver, whitelistService);
+    vwlCommandHandler = new VwlCommandHandler(this, configHandler, whitelistService, transferService);
+    rateLimiter = new LoginRateLimiter(this, configHandler, metrics);
+    eventHandler = new EventHandler(this, logger, configHandler, whitelistService, rateLimiter);
+  }
+
+  /**
+   * Opens the storage and loads the whitelist into memory.
+   *
+   * @return True if the storage was opened.
+   */
+  private boolean startStorage() {
+    if (!storage.init()) {
+      logger.error("Failed to initialize storage");
+      return false;
+    }
+
+    // Load the whitelist into memory
+    whitelistCache.start();
+    return true;
+  }
+
+  /**
+   * Opens the storage on a background task, retrying with exponential backoff
+   * until it succeeds or the proxy shuts down. Until then logins are answered
+   * from the snapshot and storage calls report errors.
+   *
+   * @param delayMillis The delay before this attempt.
+   */
+  private void startStorageInBackground(long delayMillis) {
+    server.getScheduler().buildTask(this, () -> {
+      if (shuttingDown || startStorage()) {
+        return;
+      }
+      val next = Math.min(Math.max(STORAGE_RETRY_MIN_MILLIS, delayMillis * 2), STORAGE_RETRY_MAX_MILLIS);
+      logger.warn("Answering logins from the whitelist snapshot, retrying the storage in {} seconds", next / 1000);
+      startStorageInBackground(next);
+    }).delay(delayMillis, TimeUnit.MILLISECONDS).schedule();
   }
 
   public void logDebug(String message, Object... args) {
@@ -76,12 +170,22 @@ public class VelocityWhitelist {
     try {
       // Initialize the configuration
       configHandler.initConfig();
+      createComponents();
 
-      if (configHandler.isPluginEnabled() && !storage.init()) {
-        logger.error("Failed to initialize storage");
-        return;
+      if (configHandler.isPluginEnabled()) {
+        if (whitelistCache.openSnapshot()) {
+          // Logins are answered from the snapshot, connect in the background
+          startStorageInBackground(0);
+        } else if (!startStorage()) {
+          return;
+        }
       }
 
+      // Start the login lookup executor
+      whitelistService.init();
+      rateLimiter.start();
+      metricsExporter.start();
+
       // Register the whitelist command
       val commandManager = server.getCommandManager();
       val commandMeta = commandManager.metaBuilder(VwlCommandHandler.VWL_COMMAND_ALIAS)
@@ -113,6 +217,33 @@ public class VelocityWhitelist {
     }
   }
 
+  /**
+   * Event listener for the ProxyShutdownEvent.
+   * This method is called when the proxy server shuts down.
+   * It stops the lookup executor and the cache refresh, and closes the database
+   * connection pool.
+   *
+   * @param event The ProxyShutdownEvent.
+   */
+  @Subscribe
+  public void onProxyShutdown(ProxyShutdownEvent event) {
+    shuttingDown = true;
+
+    // Save enable or debug toggles that were not written yet
+    configHandler.shutdown();
+
+    // Nothing to stop if initialization failed before the components existed
+    if (storage == null) {
+      return;
+    }
+
+    metricsExporter.stop();
+    rateLimiter.stop();
+    whitelistService.shutdown();
+    whitelistCache.stop();
+    storage.close();
+  }
+
   /**
    * Creates a BrigadierCommand for the whitelist command.
    * This method defines the command structure and its execution logic.
@@ -133,7 +264,8 @@ public class VelocityWhitelist {
             .requiredArgumentBuilder(VwlCommandHandler.VWL_COMMAND_ACTION_ARGUMENT, StringArgumentType.string())
             .suggests((context, builder) -> vwlCommandHandler.suggestAction(context, builder))
             .then(BrigadierCommand
-                .requiredArgumentBuilder(VwlCommandHandler.VWL_COMMAND_TARGET_ARGUMENT, StringArgumentType.string())
+                .requiredArgumentBuilder(VwlCommandHandler.VWL_COMMAND_TARGET_ARGUMENT,
+                    StringArgumentType.greedyString())
                 .suggests((context, builder) -> vwlCommandHandler.suggestTarget(context, builder))
                 .executes(context -> vwlCommandHandler.handleActionWithTarget(context)))
             .executes(context -> vwlCommandHandler.handleAction(context)))
@@ -0,0 +1,113 @@
+package net.lania.whitelist.cache;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+
+import lombok.val;
+
+/**
+ * Bounded cache of UUIDs that were recently found not to be whitelisted.
+ * Repeated join attempts from the same unknown player (typically bots) are
+ * denied from memory for the configured time to live instead of taking a
+ * database connection every time.
+ */
+public class NegativeCache {
+
+  private final ConcurrentHashMap<UUID, Long> expiries = new ConcurrentHashMap<>();
+
+  private volatile long ttlNanos;
+  private volatile int maxSize;
+
+  /**
+   * Creates a negative cache.
+   *
+   * @param ttlMillis How long a denied UUID is remembered (ms). Zero or less
+   *                  disables the cache.
+   * @param maxSize   The maximum number of UUIDs remembered at once.
+   */
+  public NegativeCache(long ttlMillis, int maxSize) {
+    configure(ttlMillis, maxSize);
+  }
+
+  /**
+   * Updates the time to live and size limit, e.g. after a configuration reload.
+   * Entries already cached keep their original expiry.
+   *
+   * @param ttlMillis How long a denied UUID is remembered (ms).
+   * @param maxSize   The maximum number of UUIDs remembered at once.
+   */
+  public void configure(long ttlMillis, int maxSize) {
+    this.ttlNanos = Math.max(0, ttlMillis) * 1_000_000L;
+    this.maxSize = Math.max(1, maxSize);
+  }
+
+  /**
+   * Checks if a UUID was recently denied.
+   *
+   * @param uniqueId The UUID to look up.
+   * @return True if the UUID is cached and its entry has not expired yet.
+   */
+  public boolean contains(@NotNull UUID uniqueId) {
+    val expiry = expiries.get(uniqueId);
+    if (expiry == null) {
+      return false;
+    }
+    if (expiry - System.nanoTime() <= 0) {
+      expiries.remove(uniqueId, expiry);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Remembers a UUID as not whitelisted.
+   * If the cache is full, expired entries are purged first, then arbitrary
+   * entries until there is room again.
+   *
+   * @param uniqueId The UUID that was denied.
+   */
+  public void put(@NotNull UUID uniqueId) {
+    if (ttlNanos <= 0) {
+      return;
+    }
+
+    if (expiries.size() >= maxSize) {
+      evict();
+    }
+    expiries.put(uniqueId, System.nanoTime() + ttlNanos);
+  }
+
+  /**
+   * Forgets a UUID, e.g. because it was just added to the whitelist.
+   *
+   * @param uniqueId The UUID to forget.
+   */
+  public void invalidate(@NotNull UUID uniqueId) {
+    expiries.remove(uniqueId);
+  }
+
+  /**
+   * Forgets every cached UUID.
+   */
+  public void clear() {
+    expiries.clear();
+  }
+
+  /**
+   * Purges expired entries, then trims the cache to 90% of its size limit.
+   */
+  private void evict() {
+    val now = System.nanoTime();
+    expiries.entrySet().removeIf(entry -> entry.getValue() - now <= 0);
+
+    val target = maxSize - Math.max(1, maxSize / 10);
+    val iterator = expiries.keySet().iterator();
+    while (expiries.size() > target && iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+}
@@ -0,0 +1,269 @@
+package net.lania.whitelist.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+
+import lombok.val;
+import net.lania.whitelist.storage.WhitelistEntry;
+
+/**
+ * Immutable, case-insensitive index of whitelisted usernames.
+ * Entries are kept sorted by their lower-cased username, so every prefix
+ * search is a binary search for the start of the range followed by a scan of
+ * the matching names only. Modifications return a new index (copy-on-write).
+ */
+public final class UsernameIndex {
+
+  private static final UsernameIndex EMPTY = new UsernameIndex(new WhitelistEntry[0], new String[0]);
+
+  // Sorted by keys, keys[i] is the lower-cased username of entries[i]
+  private final WhitelistEntry[] entries;
+  private final String[] keys;
+
+  private UsernameIndex(WhitelistEntry[] entries, String[] keys) {
+    this.entries = entries;
+    this.keys = keys;
+  }
+
+  /**
+   * Returns the empty index.
+   *
+   * @return The shared empty index.
+   */
+  public static UsernameIndex empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Builds an index of the given entries.
+   * If a UUID occurs more than once, the last entry wins.
+   *
+   * @param source The entries to index. Entries without a username are skipped.
+   * @return A new index.
+   */
+  public static UsernameIndex copyOf(@NotNull Collection<WhitelistEntry> source) {
+    return EMPTY.withUpserted(source);
+  }
+
+  /**
+   * Gets the number of indexed usernames.
+   *
+   * @return The number of entries.
+   */
+  public int size() {
+    return entries.length;
+  }
+
+  /**
+   * Finds usernames starting with a prefix, ignoring case.
+   *
+   * @param prefix The prefix to search for.
+   * @param limit  The maximum number of usernames to return.
+   * @return The matching usernames in alphabetical order.
+   */
+  public List<String> findByPrefix(@NotNull String prefix, int limit) {
+    val key = fold(prefix);
+    val result = new ArrayList<String>(Math.min(limit, 16));
+
+    for (var i = lowerBound(key); i < keys.length && result.size() < limit; i++) {
+      if (!keys[i].startsWith(key)) {
+        break;
+      }
+      result.add(entries[i].username());
+    }
+    return result;
+  }
+
+  /**
+   * Reads one page of entries whose username starts with a prefix, ignoring
+   * case, in {@link WhitelistEntry#BY_USERNAME} order.
+   * The page starts right after the given entry, found by binary search, so
+   * every page costs the same wherever it is in the index.
+   *
+   * @param prefix The prefix to search for.
+   * @param after  The last entry of the previous page, or null for the first
+   *               page.
+   * @param limit  The maximum number of entries to return.
+   * @return The entries of the page.
+   */
+  public List<WhitelistEntry> findPage(@NotNull String prefix, WhitelistEntry after, int limit) {
+    val key = fold(prefix);
+    var start = lowerBound(key);
+    if (after != null) {
+      // Skip the entries sharing the folded username of the last one already listed
+      val afterKey = fold(after.username());
+      start = Math.max(start, lowerBound(afterKey));
+      while (start < entries.length && compare(keys[start], entries[start], afterKey, after) <= 0) {
+        start++;
+      }
+    }
+
+    val result = new ArrayList<WhitelistEntry>(Math.min(limit, 16));
+    for (var i = start; i < keys.length && result.size() < limit; i++) {
+      if (!keys[i].startsWith(key)) {
+        break;
+      }
+      result.add(entries[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Checks if a username is indexed, ignoring case.
+   *
+   * @param username The username to look up.
+   * @return True if a whitelisted player has this username.
+   */
+  public boolean containsUsername(@NotNull String username) {
+    val key = fold(username);
+    val index = lowerBound(key);
+    return index < keys.length && keys[index].equals(key);
+  }
+
+  /**
+   * Returns an index that also holds the given entries.
+   * Entries whose UUID is already indexed replace the existing entry, so a
+   * renamed player is not listed twice. Only the changed entries are sorted,
+   * they are then merged with the indexed ones in a single pass.
+   *
+   * @param changed The entries to add or replace.
+   * @return A new index, or this index if there is nothing to change.
+   */
+  public UsernameIndex withUpserted(@NotNull Collection<WhitelistEntry> changed) {
+    // If a UUID occurs more than once, the last entry wins
+    val byUniqueId = new LinkedHashMap<UUID, WhitelistEntry>(changed.size() * 2);
+    for (val entry : changed) {
+      if (entry.username() != null) {
+        byUniqueId.put(entry.uniqueId(), entry);
+      }
+    }
+    if (byUniqueId.isEmpty()) {
+      return this;
+    }
+
+    val added = sortedCopy(byUniqueId.values());
+    val addedKeys = added.keys;
+    val addedEntries = added.entries;
+
+    val capacity = entries.length + addedEntries.length;
+    val mergedEntries = new WhitelistEntry[capacity];
+    val mergedKeys = new String[capacity];
+    var size = 0;
+    var j = 0;
+    for (var i = 0; i < entries.length; i++) {
+      if (byUniqueId.containsKey(entries[i].uniqueId())) {
+        continue;
+      }
+      while (j < addedEntries.length && compare(addedKeys[j], addedEntries[j], keys[i], entries[i]) < 0) {
+        mergedEntries[size] = addedEntries[j];
+        mergedKeys[size++] = addedKeys[j++];
+      }
+      mergedEntries[size] = entries[i];
+      mergedKeys[size++] = keys[i];
+    }
+    while (j < addedEntries.length) {
+      mergedEntries[size] = addedEntries[j];
+      mergedKeys[size++] = addedKeys[j++];
+    }
+    return new UsernameIndex(Arrays.copyOf(mergedEntries, size), Arrays.copyOf(mergedKeys, size));
+  }
+
+  /**
+   * Returns an index that no longer holds the given UUID.
+   *
+   * @param uniqueId The UUID to remove.
+   * @return A new index, or this index if the UUID is not indexed.
+   */
+  public UsernameIndex withRemoved(@NotNull UUID uniqueId) {
+    return withRemovedAll(List.of(uniqueId));
+  }
+
+  /**
+   * Returns an index that no longer holds any of the given UUIDs.
+   * The remaining entries keep their order, so nothing is sorted again.
+   *
+   * @param uniqueIds The UUIDs to remove.
+   * @return A new index, or this index if none of the UUIDs are indexed.
+   */
+  public UsernameIndex withRemovedAll(@NotNull Collection<UUID> uniqueIds) {
+    val removed = new HashSet<>(uniqueIds);
+    val remainingEntries = new WhitelistEntry[entries.length];
+    val remainingKeys = new String[keys.length];
+    var size = 0;
+    for (var i = 0; i < entries.length; i++) {
+      if (!removed.contains(entries[i].uniqueId())) {
+        remainingEntries[size] = entries[i];
+        remainingKeys[size++] = keys[i];
+      }
+    }
+    if (size == entries.length) {
+      return this;
+    }
+    return new UsernameIndex(Arrays.copyOf(remainingEntries, size), Arrays.copyOf(remainingKeys, size));
+  }
+
+  /**
+   * Sorts entries by their folded username, then UUID, folding every username
+   * only once.
+   */
+  private static UsernameIndex sortedCopy(Collection<WhitelistEntry> source) {
+    val unsorted = source.toArray(new WhitelistEntry[0]);
+    val unsortedKeys = new String[unsorted.length];
+    val order = new Integer[unsorted.length];
+    for (var i = 0; i < unsorted.length; i++) {
+      unsortedKeys[i] = fold(unsorted[i].username());
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> compare(unsortedKeys[a], unsorted[a], unsortedKeys[b], unsorted[b]));
+
+    val sorted = new WhitelistEntry[unsorted.length];
+    val sortedKeys = new String[unsorted.length];
+    for (var i = 0; i < order.length; i++) {
+      sorted[i] = unsorted[order[i]];
+      sortedKeys[i] = unsortedKeys[order[i]];
+    }
+    return new UsernameIndex(sorted, sortedKeys);
+  }
+
+  /**
+   * Compares two entries in {@link WhitelistEntry#BY_USERNAME} order, using
+   * their already folded usernames.
+   */
+  private static int compare(String keyA, WhitelistEntry a, String keyB, WhitelistEntry b) {
+    val byKey = keyA.compareTo(keyB);
+    return byKey != 0 ? byKey : a.uniqueId().toString().compareTo(b.uniqueId().toString());
+  }
+
+  /**
+   * Finds the first position whose key is not smaller than the given key.
+   */
+  private int lowerBound(String key) {
+    var low = 0;
+    var high = keys.length;
+    while (low < high) {
+      val mid = (low + high) >>> 1;
+      if (keys[mid].compareTo(key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Folds a username for case-insensitive comparison.
+   */
+  private static String fold(String username) {
+    return username.toLowerCase(Locale.ROOT);
+  }
+
+}
@@ -0,0 +1,259 @@
+package net.lania.whitelist.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+
+import lombok.val;
+
+/**
+ * Immutable open-addressing hash set of UUIDs.
+ * Every UUID is stored as its two 64-bit halves in a flat long array, which
+ * costs 32 bytes per entry at the default load factor instead of the ~90 bytes
+ * of a HashSet of UUID objects. Lookups do not allocate.
+ * Modifications return a new set (copy-on-write), so a set can be shared
+ * between threads and swapped atomically without blocking readers.
+ */
+public final class UuidSet {
+
+  private static final int MIN_CAPACITY = 16;
+
+  private static final UuidSet EMPTY = new UuidSet(new long[MIN_CAPACITY * 2], 0, false);
+
+  // Most significant bits at 2 * slot, least significant bits at 2 * slot + 1.
+  // A slot holding (0, 0) is empty, the all-zero UUID is tracked separately.
+  private final long[] slots;
+  private final int mask;
+  private final int size;
+  private final boolean containsZero;
+
+  private UuidSet(long[] slots, int size, boolean containsZero) {
+    this.slots = slots;
+    this.mask = slots.length / 2 - 1;
+    this.size = size;
+    this.containsZero = containsZero;
+  }
+
+  /**
+   * Returns the empty set.
+   *
+   * @return The shared empty set.
+   */
+  public static UuidSet empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Builds a set holding the given UUIDs.
+   *
+   * @param uniqueIds The UUIDs to store. Duplicates are ignored.
+   * @return A new set.
+   */
+  public static UuidSet copyOf(@NotNull Collection<UUID> uniqueIds) {
+    return EMPTY.withAddedAll(uniqueIds);
+  }
+
+  /**
+   * Gets the number of UUIDs in the set.
+   *
+   * @return The number of UUIDs.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Checks if a UUID is in the set.
+   *
+   * @param uniqueId The UUID to look up.
+   * @return True if the set holds the UUID.
+   */
+  public boolean contains(@NotNull UUID uniqueId) {
+    return contains(uniqueId.getMostSignificantBits(), uniqueId.getLeastSignificantBits());
+  }
+
+  /**
+   * Checks if a UUID, given as its two halves, is in the set.
+   *
+   * @param msb The most significant 64 bits of the UUID.
+   * @param lsb The least significant 64 bits of the UUID.
+   * @return True if the set holds the UUID.
+   */
+  public boolean contains(long msb, long lsb) {
+    if (msb == 0 && lsb == 0) {
+      return containsZero;
+    }
+
+    var slot = slotOf(msb, lsb, mask);
+    while (true) {
+      val storedMsb = slots[slot * 2];
+      val storedLsb = slots[slot * 2 + 1];
+      if (storedMsb == msb && storedLsb == lsb) {
+        return true;
+      }
+      if (storedMsb == 0 && storedLsb == 0) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Returns a set that also holds the given UUID.
+   *
+   * @param uniqueId The UUID to add.
+   * @return This set if the UUID is already present, a new set otherwise.
+   */
+  public UuidSet withAdded(@NotNull UUID uniqueId) {
+    if (contains(uniqueId)) {
+      return this;
+    }
+    return withAddedAll(List.of(uniqueId));
+  }
+
+  /**
+   * Returns a set that also holds all of the given UUIDs.
+   *
+   * @param uniqueIds The UUIDs to add.
+   * @return A new set, or this set if there is nothing to add.
+   */
+  public UuidSet withAddedAll(@NotNull Collection<UUID> uniqueIds) {
+    if (uniqueIds.isEmpty()) {
+      return this;
+    }
+
+    val target = new long[capacityFor(size + uniqueIds.size()) * 2];
+    val targetMask = target.length / 2 - 1;
+    var targetSize = 0;
+    var targetZero = containsZero;
+
+    for (var slot = 0; slot <= mask; slot++) {
+      val msb = slots[slot * 2];
+      val lsb = slots[slot * 2 + 1];
+      if (msb != 0 || lsb != 0) {
+        insert(target, targetMask, msb, lsb);
+        targetSize++;
+      }
+    }
+
+    for (val uniqueId : uniqueIds) {
+      val msb = uniqueId.getMostSignificantBits();
+      val lsb = uniqueId.getLeastSignificantBits();
+      if (msb == 0 && lsb == 0) {
+        targetZero = true;
+      } else if (insert(target, targetMask, msb, lsb)) {
+        targetSize++;
+      }
+    }
+
+    return new UuidSet(target, targetSize + (targetZero ? 1 : 0), targetZero);
+  }
+
+  /**
+   * Returns a set that no longer holds the given UUID.
+   *
+   * @param uniqueId The UUID to remove.
+   * @return This set if the UUID is not present, a new set otherwise.
+   */
+  public UuidSet withRemoved(@NotNull UUID uniqueId) {
+    return withRemovedAll(List.of(uniqueId));
+  }
+
+  /**
+   * Returns a set that no longer holds any of the given UUIDs.
+   *
+   * @param uniqueIds The UUIDs to remove.
+   * @return This set if none of the UUIDs are present, a new set otherwise.
+   */
+  public UuidSet withRemovedAll(@NotNull Collection<UUID> uniqueIds) {
+    // Collect the UUIDs actually present, so absent ones cost nothing
+    val present = new ArrayList<UUID>();
+    for (val uniqueId : uniqueIds) {
+      if (contains(uniqueId)) {
+        present.add(uniqueId);
+      }
+    }
+    if (present.isEmpty()) {
+      return this;
+    }
+    val removed = copyOf(present);
+
+    // Rebuilding is simpler than tombstones and keeps probe chains short
+    val target = new long[capacityFor(size - removed.size()) * 2];
+    val targetMask = target.length / 2 - 1;
+    for (var slot = 0; slot <= mask; slot++) {
+      val msb = slots[slot * 2];
+      val lsb = slots[slot * 2 + 1];
+      if ((msb != 0 || lsb != 0) && !removed.contains(msb, lsb)) {
+        insert(target, targetMask, msb, lsb);
+      }
+    }
+    return new UuidSet(target, size - removed.size(), containsZero && !removed.containsZero);
+  }
+
+  /**
+   * Calls the given action for every UUID in the set, in no particular order.
+   *
+   * @param action The action to call.
+   */
+  public void forEach(@NotNull Consumer<UUID> action) {
+    if (containsZero) {
+      action.accept(new UUID(0, 0));
+    }
+    for (var slot = 0; slot <= mask; slot++) {
+      val msb = slots[slot * 2];
+      val lsb = slots[slot * 2 + 1];
+      if (msb != 0 || lsb != 0) {
+        action.accept(new UUID(msb, lsb));
+      }
+    }
+  }
+
+  /**
+   * Inserts a non-zero UUID into a slot array under construction.
+   *
+   * @return True if the UUID was inserted, false if it was already present.
+   */
+  private static boolean insert(long[] target, int targetMask, long msb, long lsb) {
+    var slot = slotOf(msb, lsb, targetMask);
+    while (true) {
+      val storedMsb = target[slot * 2];
+      val storedLsb = target[slot * 2 + 1];
+      if (storedMsb == 0 && storedLsb == 0) {
+        target[slot * 2] = msb;
+        target[slot * 2 + 1] = lsb;
+        return true;
+      }
+      if (storedMsb == msb && storedLsb == lsb) {
+        return false;
+      }
+      slot = (slot + 1) & targetMask;
+    }
+  }
+
+  /**
+   * Picks the first slot to probe for a UUID.
+   * Version 3 and 4 UUIDs are already well distributed, the final mix only
+   * guards against patterned UUIDs clustering in the table.
+   */
+  private static int slotOf(long msb, long lsb, int slotMask) {
+    long hash = msb ^ Long.rotateLeft(lsb, 32);
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    return (int) hash & slotMask;
+  }
+
+  /**
+   * Computes a power of two slot count keeping the load factor at or below 0.5.
+   */
+  private static int capacityFor(int entries) {
+    val wanted = Math.max(MIN_CAPACITY, entries * 2);
+    return Integer.highestOneBit(wanted - 1) << 1;
+  }
+
+}
@@ -0,0 +1,616 @@
+package net.lania.whitelist.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import com.velocitypowered.api.scheduler.ScheduledTask;
+
+import lombok.val;
+import net.lania.whitelist.ConfigManager;
+import net.lania.whitelist.VelocityWhitelist;
+import net.lania.whitelist.storage.WhitelistChange;
+import net.lania.whitelist.storage.WhitelistEntry;
+import net.lania.whitelist.storage.WhitelistStorage;
+
+/**
+ * In-memory copy of the whitelist table.
+ * The whole table is loaded at startup and refreshed on a fixed interval, so
+ * login checks can be answered without a database round trip. When a change
+ * marker column is configured, refreshes only fetch rows that changed since the
+ * previous refresh.
+ * The entries are held in a {@link UuidSet} that is replaced atomically on every
+ * change, so readers never block and never see a half-applied refresh. A
+ * {@link UsernameIndex} kept alongside answers username prefix searches for
+ * tab completion and /vwl list.
+ * After every load the UUIDs are also written to a {@link WhitelistSnapshot}
+ * file. On the next start the snapshot is mapped before the database is
+ * reached, so logins are answered right away and the database load reconciles
+ * it in the background.
+ * If the storage keeps a change log, it is polled on a short interval and only
+ * the logged changes are applied, so changes made on other proxies show up
+ * within seconds without reloading the whole table.
+ */
+public class WhitelistCache {
+
+  // Maximum number of change log rows fetched per query
+  private static final int CHANGE_LOG_PAGE_SIZE = 1000;
+  // How long a missing change log version is read again before it is taken
+  // for a rolled back transaction
+  private static final long CHANGE_GAP_GRACE_NANOS = TimeUnit.MINUTES.toNanos(5);
+  // Maximum number of missing versions tracked, the oldest are given up first.
+  // A poll skipping more versions at once reloads the whole whitelist instead
+  private static final int MAX_CHANGE_GAPS = 10000;
+
+  private final VelocityWhitelist plugin;
+  private final Logger logger;
+  private final ConfigManager configHandler;
+  private final WhitelistStorage storage;
+
+  private final AtomicReference<UuidSet> entries = new AtomicReference<>();
+  private final AtomicReference<UsernameIndex> usernames = new AtomicReference<>();
+  private volatile Object changeMarker;
+  // Last change log version applied, -1 until the first load
+  private volatile long changeVersion = -1;
+  // Versions below changeVersion not seen yet, with the time they were first
+  // missed, guarded by loadLock
+  private final TreeMap<Long, Long> changeGaps = new TreeMap<>();
+  // Serializes loads, refreshes and change log polls
+  private final Object loadLock = new Object();
+  // Answers lookups after a restart until the first load or change
+  private volatile WhitelistSnapshot snapshot;
+  // Set when the entries differ from the snapshot file
+  private volatile boolean snapshotDirty;
+  private ScheduledTask refreshTask;
+  private ScheduledTask pollTask;
+
+  public WhitelistCache(VelocityWhitelist plugin, Logger logger, ConfigManager configHandler, WhitelistStorage storage) {
+    this.plugin = plugin;
+    this.logger = logger;
+    this.configHandler = configHandler;
+    this.storage = storage;
+  }
+
+  /**
+   * Maps the snapshot file written by the previous run, so lookups can be
+   * answered before the whitelist table is loaded.
+   * Does nothing if the cache or the snapshot is disabled in the configuration.
+   *
+   * @return True if a snapshot was mapped.
+   */
+  public boolean openSnapshot() {
+    val file = snapshotFile();
+    if (file == null || !Files.exists(file)) {
+      return false;
+    }
+
+    try {
+      snapshot = WhitelistSnapshot.open(file);
+      logger.info("Loaded {} whitelist entries from {}", snapshot.size(), file.getFileName());
+      return true;
+    } catch (IOException e) {
+      logger.warn("Ignoring unreadable whitelist snapshot {}: {}", file.getFileName(), e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Loads the whitelist table and schedules the periodic refresh.
+   * Does nothing if the cache is disabled in the configuration.
+   */
+  public void start() {
+    val cfg = configHandler.getCache();
+    if (!cfg.isEnabled()) {
+      return;
+    }
+
+    reload();
+
+    refreshTask = plugin.getServer().getScheduler()
+        .buildTask(plugin, this::refresh)
+        .delay(cfg.getRefreshInterval(), TimeUnit.SECONDS)
+        .repeat(cfg.getRefreshInterval(), TimeUnit.SECONDS)
+        .schedule();
+
+    if (storage.hasChangeLog()) {
+      pollTask = plugin.getServer().getScheduler()
+          .buildTask(plugin, this::pollChanges)
+          .delay(cfg.getPollInterval(), TimeUnit.SECONDS)
+          .repeat(cfg.getPollInterval(), TimeUnit.SECONDS)
+          .schedule();
+    }
+  }
+
+  /**
+   * Cancels the periodic refresh, saves the snapshot if it is out of date and
+   * drops the cached entries.
+   */
+  public void stop() {
+    if (refreshTask != null) {
+      refreshTask.cancel();
+      refreshTask = null;
+    }
+    if (pollTask != null) {
+      pollTask.cancel();
+      pollTask = null;
+    }
+    saveSnapshot();
+    snapshot = null;
+    entries.set(null);
+    usernames.set(null);
+    changeMarker = null;
+    synchronized (loadLock) {
+      changeVersion = -1;
+      changeGaps.clear();
+    }
+  }
+
+  /**
+   * Checks whether the cache holds data and can answer lookups.
+   *
+   * @return True once the whitelist table or a snapshot has been loaded.
+   */
+  public boolean isLoaded() {
+    return entries.get() != null || snapshot != null;
+  }
+
+  /**
+   * Checks whether the cache is answering lookups from the snapshot file
+   * because the whitelist table was not loaded yet.
+   *
+   * @return True while lookups are answered from the snapshot.
+   */
+  public boolean isFromSnapshot() {
+    return entries.get() == null && snapshot != null;
+  }
+
+  /**
+   * Gets the number of cached UUIDs.
+   *
+   * @return The number of UUIDs, or -1 if the cache is not loaded.
+   */
+  public int size() {
+    val current = entries.get();
+    if (current != null) {
+      return current.size();
+    }
+    val mapped = snapshot;
+    return mapped == null ? -1 : mapped.size();
+  }
+
+  /**
+   * Checks whether the cache holds usernames and can answer username searches.
+   * The snapshot only holds UUIDs, so this becomes true with the first load of
+   * the whitelist table.
+   *
+   * @return True once the whitelist table has been loaded at least once.
+   */
+  public boolean hasUsernames() {
+    return usernames.get() != null;
+  }
+
+  /**
+   * Checks if a UUID is in the cached whitelist.
+   * Only meaningful if {@link #isLoaded()} returns true.
+   *
+   * @param uniqueId The UUID to look up.
+   * @return True if the UUID is whitelisted.
+   */
+  public boolean contains(@NotNull UUID uniqueId) {
+    val current = entries.get();
+    if (current != null) {
+      return current.contains(uniqueId);
+    }
+    val mapped = snapshot;
+    return mapped != null && mapped.contains(uniqueId);
+  }
+
+  /**
+   * Finds whitelisted usernames starting with a prefix, ignoring case.
+   * Only meaningful if {@link #hasUsernames()} returns true.
+   *
+   * @param prefix The prefix to search for.
+   * @param limit  The maximum number of usernames to return.
+   * @return The matching usernames in alphabetical order.
+   */
+  public List<String> findUsernames(@NotNull String prefix, int limit) {
+    val current = usernames.get();
+    return current == null ? Collections.emptyList() : current.findByPrefix(prefix, limit);
+  }
+
+  /**
+   * Reads one page of whitelisted players whose username starts with a prefix,
+   * ignoring case. Only meaningful if {@link #hasUsernames()} returns true.
+   *
+   * @param prefix The prefix to search for.
+   * @param after  The last entry of the previous page, or null for the first
+   *               page.
+   * @param limit  The maximum number of entries to return.
+   * @return The entries of the page in {@link WhitelistEntry#BY_USERNAME} order.
+   */
+  public List<WhitelistEntry> findUsernamePage(@NotNull String prefix, WhitelistEntry after, int limit) {
+    val current = usernames.get();
+    return current == null ? Collections.emptyList() : current.findPage(prefix, after, limit);
+  }
+
+  /**
+   * Checks if a username is in the cached whitelist, ignoring case.
+   * Only meaningful if {@link #hasUsernames()} returns true.
+   *
+   * @param username The username to look up.
+   * @return True if a whitelisted player has this username.
+   */
+  public boolean containsUsername(@NotNull String username) {
+    val current = usernames.get();
+    return current != null && current.containsUsername(username);
+  }
+
+  /**
+   * Adds a player to the cache after it was written to the database.
+   *
+   * @param uniqueId The UUID that was whitelisted.
+   * @param username The username stored with the UUID.
+   */
+  public void add(@NotNull UUID uniqueId, @NotNull String username) {
+    materializeSnapshot();
+    entries.updateAndGet(current -> current == null ? null : current.withAdded(uniqueId));
+    snapshotDirty = true;
+    usernames.updateAndGet(current -> current == null ? null
+        : current.withUpserted(List.of(new WhitelistEntry(uniqueId, username))));
+  }
+
+  /**
+   * Adds many players to the cache after they were written to the database.
+   * The underlying set and index are rebuilt once for the whole batch.
+   *
+   * @param added The entries that were whitelisted.
+   */
+  public void addAll(@NotNull List<WhitelistEntry> added) {
+    val uniqueIds = new ArrayList<UUID>(added.size());
+    added.forEach(entry -> uniqueIds.add(entry.uniqueId()));
+    materializeSnapshot();
+    entries.updateAndGet(current -> current == null ? null : current.withAddedAll(uniqueIds));
+    snapshotDirty = true;
+    usernames.updateAndGet(current -> current == null ? null : current.withUpserted(added));
+  }
+
+  /**
+   * Removes many players from the cache after they were deleted from the
+   * database.
+   *
+   * @param removed The UUIDs that were removed from the whitelist.
+   */
+  public void removeAll(@NotNull List<UUID> removed) {
+    materializeSnapshot();
+    entries.updateAndGet(current -> current == null ? null : current.withRemovedAll(removed));
+    snapshotDirty = true;
+    usernames.updateAndGet(current -> current == null ? null : current.withRemovedAll(removed));
+  }
+
+  /**
+   * Removes a UUID from the cache after it was deleted from the database.
+   *
+   * @param uniqueId The UUID that was removed from the whitelist.
+   */
+  public void remove(@NotNull UUID uniqueId) {
+    materializeSnapshot();
+    entries.updateAndGet(current -> current == null ? null : current.withRemoved(uniqueId));
+    snapshotDirty = true;
+    usernames.updateAndGet(current -> current == null ? null : current.withRemoved(uniqueId));
+  }
+
+  /**
+   * Brings the cache up to date with the database.
+   * With a change log, pending changes are applied, old log rows are pruned and
+   * a full reload is done only if the row count shows that rows were changed
+   * outside of the plugin.
+   * With a change marker column, only changed rows are fetched and a full
+   * reload is done only if the row count shows that rows were deleted.
+   * Without either, the whole table is reloaded.
+   */
+  public void refresh() {
+    synchronized (loadLock) {
+      if (storage.hasChangeLog() && entries.get() != null && changeVersion >= 0) {
+        refreshFromChangeLog();
+      } else {
+        refreshFromTable();
+      }
+    }
+  }
+
+  /**
+   * Applies the change log and checks the cache against the table size.
+   */
+  private void refreshFromChangeLog() {
+    pollChanges();
+    storage.pruneChangeLog(configHandler.getDatabase().getChangeLogRetention());
+
+    val current = entries.get();
+    val count = storage.countEntries();
+    if (current != null && count >= 0 && count != current.size()) {
+      plugin.logDebug("Whitelist cache size {} differs from table size {}, reloading", current.size(), count);
+      reload();
+      return;
+    }
+    saveSnapshot();
+  }
+
+  /**
+   * Applies the changes logged since the last poll.
+   * Versions are handed out when a change is written but become visible when
+   * its transaction commits, so a poll can see a version before an older one.
+   * The missing versions are remembered and read again by the following polls
+   * until they show up, or until a grace period tells that their transaction
+   * was rolled back.
+   * If the log no longer holds every change since then, because the rows were
+   * pruned while this proxy could not reach the database, or if the versions
+   * jumped by more than can be tracked, the whole table is reloaded instead.
+   */
+  public void pollChanges() {
+    synchronized (loadLock) {
+      // Until a load has read the log position, the refresh task retries the load
+      if (entries.get() == null || changeVersion < 0) {
+        return;
+      }
+
+      val now = System.nanoTime();
+      changeGaps.values().removeIf(missedAt -> now - missedAt > CHANGE_GAP_GRACE_NANOS);
+
+      // Read again from the oldest missing version, applied versions are skipped
+      var from = changeGaps.isEmpty() ? changeVersion : changeGaps.firstKey() - 1;
+      while (true) {
+        val changes = storage.findChangesSince(from, CHANGE_LOG_PAGE_SIZE);
+        if (changes == null) {
+          plugin.logDebug("Failed to poll the whitelist change log, keeping the previous data");
+          return;
+        }
+        if (changes.isEmpty()) {
+          return;
+        }
+
+        if (changes.get(0).version() > from + 1) {
+          val bounds = storage.findChangeLogBounds();
+          if (bounds == null) {
+            return;
+          }
+          if (bounds.oldestVersion() > from + 1) {
+            logger.info("Whitelist change log was pruned past version {}, reloading the whitelist", from);
+            reload();
+            return;
+          }
+        }
+
+        if (!applyChanges(changes, now)) {
+          logger.info("Whitelist change log skipped more than {} versions after version {}, reloading the whitelist",
+              MAX_CHANGE_GAPS, from);
+          reload();
+          return;
+        }
+        if (changes.size() < CHANGE_LOG_PAGE_SIZE) {
+          return;
+        }
+        from = changes.get(changes.size() - 1).version();
+      }
+    }
+  }
+
+  /**
+   * Applies the change log rows not applied yet to the cached entries.
+   * Only the last change of every UUID counts, so the adds and removes can be
+   * applied as two sets in one swap each. A late version never undoes a newer
+   * change of the same UUID: both transactions update the same whitelist row,
+   * so the row lock makes them commit in version order.
+   *
+   * @param changes The changes, ordered by version.
+   * @param now     The time of the poll, from {@link System#nanoTime()}.
+   * @return False if the versions jumped by more than {@link #MAX_CHANGE_GAPS},
+   *         in which case nothing was applied.
+   */
+  private boolean applyChanges(List<WhitelistChange> changes, long now) {
+    // Checked up front, so a jump of the auto increment never fills the gap map
+    var expected = changeVersion + 1;
+    for (val change : changes) {
+      if (change.version() - expected > MAX_CHANGE_GAPS) {
+        return false;
+      }
+      expected = Math.max(expected, change.version() + 1);
+    }
+
+    val latest = new LinkedHashMap<UUID, WhitelistChange>();
+    expected = changeVersion + 1;
+    for (val change : changes) {
+      val version = change.version();
+      if (version > changeVersion) {
+        for (var missing = expected; missing < version; missing++) {
+          changeGaps.put(missing, now);
+        }
+        expected = version + 1;
+      } else if (changeGaps.remove(version) == null) {
+        continue;
+      }
+      latest.put(change.uniqueId(), change);
+    }
+    while (changeGaps.size() > MAX_CHANGE_GAPS) {
+      changeGaps.pollFirstEntry();
+    }
+    if (latest.isEmpty()) {
+      return true;
+    }
+
+    val added = new ArrayList<WhitelistEntry>();
+    val addedIds = new ArrayList<UUID>();
+    val removed = new ArrayList<UUID>();
+    latest.values().forEach(change -> {
+      if (change.removed()) {
+        removed.add(change.uniqueId());
+      } else {
+        added.add(new WhitelistEntry(change.uniqueId(), change.username()));
+        addedIds.add(change.uniqueId());
+      }
+    });
+
+    entries.updateAndGet(set -> set == null ? null : set.withAddedAll(addedIds).withRemovedAll(removed));
+    usernames.updateAndGet(index -> index == null ? null : index.withUpserted(added).withRemovedAll(removed));
+    changeVersion = Math.max(changeVersion, changes.get(changes.size() - 1).version());
+    snapshotDirty = true;
+    plugin.logDebug("Applied {} whitelist changes up to version {}, {} versions missing", latest.size(),
+        changeVersion, changeGaps.size());
+    return true;
+  }
+
+  /**
+   * Refreshes the cache from the whitelist table.
+   */
+  private void refreshFromTable() {
+    val column = configHandler.getCache().getChangeColumn();
+    if (column.isEmpty() || entries.get() == null || changeMarker == null) {
+      reload();
+      return;
+    }
+
+    val changes = storage.findEntriesChangedSince(column, changeMarker);
+    if (changes == null) {
+      logger.warn("Failed to refresh the whitelist cache, keeping the previous data");
+      return;
+    }
+
+    val changed = new ArrayList<UUID>(changes.entries().size());
+    changes.entries().forEach(entry -> changed.add(entry.uniqueId()));
+    val current = entries.updateAndGet(set -> set == null ? null : set.withAddedAll(changed));
+    usernames.updateAndGet(index -> index == null ? null : index.withUpserted(changes.entries()));
+    changeMarker = changes.marker();
+    if (!changed.isEmpty()) {
+      snapshotDirty = true;
+    }
+
+    // Deleted rows leave no marker behind, a count mismatch means a full reload
+    val count = storage.countEntries();
+    if (current != null && count >= 0 && count != current.size()) {
+      plugin.logDebug("Whitelist cache size {} differs from table size {}, reloading", current.size(), count);
+      reload();
+      return;
+    }
+
+    plugin.logDebug("Whitelist cache refreshed, {} changed entries", changes.entries().size());
+    saveSnapshot();
+  }
+
+  /**
+   * Replaces the cache content with a full copy of the whitelist table.
+   * On failure the previous content is kept.
+   */
+  private void reload() {
+    synchronized (loadLock) {
+      reloadLocked();
+    }
+  }
+
+  private void reloadLocked() {
+    // Read the log position first, changes committed during the load are
+    // applied again by the next poll, which is harmless
+    val bounds = storage.hasChangeLog() ? storage.findChangeLogBounds() : null;
+
+    val column = configHandler.getCache().getChangeColumn();
+    final List<WhitelistEntry> loaded;
+    Object marker = null;
+
+    if (column.isEmpty()) {
+      loaded = storage.findAllEntries();
+    } else {
+      val changes = storage.findEntriesChangedSince(column, null);
+      loaded = changes == null ? null : changes.entries();
+      marker = changes == null ? null : changes.marker();
+    }
+
+    if (loaded == null) {
+      logger.warn("Failed to load the whitelist cache, keeping the previous data");
+      return;
+    }
+
+    val uniqueIds = new ArrayList<UUID>();
+    loaded.forEach(entry -> uniqueIds.add(entry.uniqueId()));
+    val fresh = UuidSet.copyOf(uniqueIds);
+
+    entries.set(fresh);
+    usernames.set(UsernameIndex.copyOf(loaded));
+    changeMarker = marker;
+    changeVersion = bounds == null ? -1 : bounds.latestVersion();
+    changeGaps.clear();
+    if (bounds != null && bounds.oldestVersion() > 0) {
+      // Versions below the latest one may belong to transactions that had not
+      // committed yet, the next polls read them like any other missing version
+      val now = System.nanoTime();
+      val from = Math.max(bounds.oldestVersion(), bounds.latestVersion() - MAX_CHANGE_GAPS);
+      for (var version = from; version < bounds.latestVersion(); version++) {
+        changeGaps.put(version, now);
+      }
+    }
+    snapshot = null;
+    snapshotDirty = true;
+    plugin.logDebug("Whitelist cache loaded with {} entries", fresh.size());
+    saveSnapshot();
+  }
+
+  /**
+   * Copies the mapped snapshot into the in-memory set, so changes made before
+   * the first load of the whitelist table are not lost.
+   * The username index stays empty until the table is loaded.
+   */
+  private synchronized void materializeSnapshot() {
+    val mapped = snapshot;
+    if (mapped == null || entries.get() != null) {
+      return;
+    }
+
+    val uniqueIds = new ArrayList<UUID>(mapped.size());
+    mapped.forEach(uniqueIds::add);
+    entries.compareAndSet(null, UuidSet.copyOf(uniqueIds));
+    snapshot = null;
+  }
+
+  /**
+   * Writes the cached UUIDs to the snapshot file if they changed since the last
+   * write. Failures are logged and retried on the next refresh.
+   */
+  private void saveSnapshot() {
+    val file = snapshotFile();
+    val current = entries.get();
+    if (file == null || current == null || !snapshotDirty) {
+      return;
+    }
+
+    snapshotDirty = false;
+    try {
+      WhitelistSnapshot.write(file, current);
+      plugin.logDebug("Wrote {} whitelist entries to {}", current.size(), file.getFileName());
+    } catch (IOException e) {
+      snapshotDirty = true;
+      logger.warn("Failed to write the whitelist snapshot {}", file.getFileName(), e);
+    }
+  }
+
+  /**
+   * Resolves the configured snapshot file.
+   *
+   * @return The snapshot file, or null if snapshots are disabled.
+   */
+  private Path snapshotFile() {
+    val cfg = configHandler.getCache();
+    if (!cfg.isEnabled() || cfg.getSnapshotFile().isEmpty()) {
+      return null;
+    }
+    return plugin.getDataDirectory().resolve(cfg.getSnapshotFile());
+  }
+
+}
@@ -0,0 +1,197 @@
+package net.lania.whitelist.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import org.jetbrains.annotations.NotNull;
+
+import lombok.val;
+
+/**
+ * Read-only, memory-mapped copy of the whitelist persisted in the plugin data
+ * directory.
+ * The file holds a small header followed by the whitelisted UUIDs as sorted
+ * 16-byte records, so a lookup is a binary search over the mapped file
+ * without reading it into the heap first. It lets the proxy answer logins
+ * right after a restart, before the database has been reached.
+ *
+ * <p>
+ * Layout: magic (4 bytes), format version (4), record count (4), CRC32C of the
+ * records (4), then the records, each the most and least significant bits of a
+ * UUID as big-endian longs.
+ */
+public final class WhitelistSnapshot {
+
+  private static final int MAGIC = 0x56574C53; // "VWLS"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int RECORD_SIZE = 16;
+
+  private final MappedByteBuffer buffer;
+  private final int count;
+
+  private WhitelistSnapshot(MappedByteBuffer buffer, int count) {
+    this.buffer = buffer;
+    this.count = count;
+  }
+
+  /**
+   * Maps a snapshot file and validates it.
+   *
+   * @param file The snapshot file.
+   * @return The snapshot.
+   * @throws IOException If the file cannot be read, or is not a valid snapshot
+   *                     of the supported version.
+   */
+  public static WhitelistSnapshot open(@NotNull Path file) throws IOException {
+    try (val channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      val size = channel.size();
+      if (size < HEADER_SIZE) {
+        throw new IOException("Snapshot is too small");
+      }
+
+      val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (buffer.getInt(0) != MAGIC) {
+        throw new IOException("Not a whitelist snapshot");
+      }
+      if (buffer.getInt(4) != VERSION) {
+        throw new IOException("Unsupported snapshot version " + buffer.getInt(4));
+      }
+
+      val count = buffer.getInt(8);
+      if (count < 0 || size != HEADER_SIZE + (long) count * RECORD_SIZE) {
+        throw new IOException("Snapshot size does not match its record count");
+      }
+
+      val crc = new CRC32C();
+      crc.update(buffer.slice(HEADER_SIZE, count * RECORD_SIZE));
+      if ((int) crc.getValue() != buffer.getInt(12)) {
+        throw new IOException("Snapshot checksum mismatch");
+      }
+
+      return new WhitelistSnapshot(buffer, count);
+    }
+  }
+
+  /**
+   * Writes a snapshot of a UUID set.
+   * The snapshot is written to a temporary file, flushed to disk and then
+   * renamed over the previous snapshot, so a crash leaves either the old or the
+   * new snapshot behind, never a partial one.
+   *
+   * @param file      The snapshot file.
+   * @param uniqueIds The UUIDs to persist.
+   * @throws IOException If the snapshot could not be written.
+   */
+  public static void write(@NotNull Path file, @NotNull UuidSet uniqueIds) throws IOException {
+    // UUID ordering compares the signed halves, the same order contains() uses
+    val sorted = new ArrayList<UUID>(uniqueIds.size());
+    uniqueIds.forEach(sorted::add);
+    Collections.sort(sorted);
+    val count = sorted.size();
+
+    val records = ByteBuffer.allocate(count * RECORD_SIZE);
+    for (val uniqueId : sorted) {
+      records.putLong(uniqueId.getMostSignificantBits());
+      records.putLong(uniqueId.getLeastSignificantBits());
+    }
+    records.flip();
+
+    val crc = new CRC32C();
+    crc.update(records.duplicate());
+
+    val header = ByteBuffer.allocate(HEADER_SIZE)
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .putInt(count)
+        .putInt((int) crc.getValue())
+        .flip();
+
+    val temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (val channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      while (records.hasRemaining()) {
+        channel.write(records);
+      }
+      channel.force(true);
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Gets the number of UUIDs in the snapshot.
+   *
+   * @return The number of UUIDs.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Checks if a UUID is in the snapshot.
+   *
+   * @param uniqueId The UUID to look up.
+   * @return True if the snapshot holds the UUID.
+   */
+  public boolean contains(@NotNull UUID uniqueId) {
+    return contains(uniqueId.getMostSignificantBits(), uniqueId.getLeastSignificantBits());
+  }
+
+  /**
+   * Checks if a UUID, given as its two halves, is in the snapshot. Does not
+   * allocate.
+   *
+   * @param msb The most significant 64 bits of the UUID.
+   * @param lsb The least significant 64 bits of the UUID.
+   * @return True if the snapshot holds the UUID.
+   */
+  public boolean contains(long msb, long lsb) {
+    var low = 0;
+    var high = count - 1;
+    while (low <= high) {
+      val mid = (low + high) >>> 1;
+      val offset = HEADER_SIZE + mid * RECORD_SIZE;
+      val cmp = compare(buffer.getLong(offset), buffer.getLong(offset + 8), msb, lsb);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Calls the given action for every UUID in the snapshot, in sorted order.
+   *
+   * @param action The action to call.
+   */
+  public void forEach(@NotNull Consumer<UUID> action) {
+    for (var i = 0; i < count; i++) {
+      val offset = HEADER_SIZE + i * RECORD_SIZE;
+      action.accept(new UUID(buffer.getLong(offset), buffer.getLong(offset + 8)));
+    }
+  }
+
+  private static int compare(long msbA, long lsbA, long msbB, long lsbB) {
+    val cmp = Long.compare(msbA, msbB);
+    return cmp != 0 ? cmp : Long.compare(lsbA, lsbB);
+  }
+
+}
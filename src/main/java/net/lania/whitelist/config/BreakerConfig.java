@@ -0,0 +1,23 @@
+package net.lania.whitelist.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class BreakerConfig {
+
+  @Builder.Default
+  private boolean enabled = true;
+  @Builder.Default
+  private int failureThreshold = 5;
+  @Builder.Default
+  private long slowCallThreshold = 2000;
+  @Builder.Default
+  private long openDuration = 30000;
+  @Builder.Default
+  private boolean allowWhenOpen = false;
+  @Builder.Default
+  private int lastKnownSize = 10000;
+
+}
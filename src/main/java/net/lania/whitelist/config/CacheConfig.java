@@ -0,0 +1,25 @@
+package net.lania.whitelist.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class CacheConfig {
+
+  @Builder.Default
+  private boolean enabled = true;
+  @Builder.Default
+  private long refreshInterval = 60;
+  @Builder.Default
+  private long pollInterval = 2;
+  @Builder.Default
+  private String changeColumn = "";
+  @Builder.Default
+  private long negativeTtl = 30000;
+  @Builder.Default
+  private int negativeMaxSize = 10000;
+  @Builder.Default
+  private String snapshotFile = "whitelist.snapshot";
+
+}
@@ -0,0 +1,80 @@
+package net.lania.whitelist.config;
+
+import java.util.Map;
+
+/**
+ * One consistent view of the whole configuration.
+ * A snapshot is built completely before it is published, and is not modified
+ * afterwards: a reload or a runtime change builds a new snapshot and swaps it
+ * in, so a reader never sees a mix of old and new settings.
+ *
+ * @param debugEnabled      Whether debug logging is enabled.
+ * @param pluginEnabled     Whether the whitelist is enforced.
+ * @param defaultLocale     The locale of the messages.
+ * @param storage           The storage section.
+ * @param database          The database section.
+ * @param login             The login section.
+ * @param rateLimit         The rate limit section.
+ * @param cache             The cache section.
+ * @param breaker           The circuit breaker section.
+ * @param suggestions       The suggestions section.
+ * @param transfer          The import and export section.
+ * @param identity          The identity section.
+ * @param metrics           The metrics section.
+ * @param localizedMessages The messages by locale.
+ */
+public record ConfigSnapshot(
+    boolean debugEnabled,
+    boolean pluginEnabled,
+    String defaultLocale,
+    StorageConfig storage,
+    DatabaseConfig database,
+    LoginConfig login,
+    RateLimitConfig rateLimit,
+    CacheConfig cache,
+    BreakerConfig breaker,
+    SuggestionConfig suggestions,
+    TransferConfig transfer,
+    IdentityConfig identity,
+    MetricsConfig metrics,
+    Map<String, Messages> localizedMessages) {
+
+  public ConfigSnapshot {
+    localizedMessages = Map.copyOf(localizedMessages);
+  }
+
+  /**
+   * Gets the snapshot used before the configuration file is loaded.
+   *
+   * @return A snapshot with the default of every section.
+   */
+  public static ConfigSnapshot defaults() {
+    return new ConfigSnapshot(false, false, "en", StorageConfig.builder().build(), DatabaseConfig.builder().build(),
+        LoginConfig.builder().build(), RateLimitConfig.builder().build(), CacheConfig.builder().build(),
+        BreakerConfig.builder().build(), SuggestionConfig.builder().build(), TransferConfig.builder().build(),
+        IdentityConfig.builder().build(), MetricsConfig.builder().build(), Map.of());
+  }
+
+  /**
+   * Returns a copy of this snapshot with debug logging switched.
+   *
+   * @param enabled Whether debug logging is enabled.
+   * @return The new snapshot.
+   */
+  public ConfigSnapshot withDebugEnabled(boolean enabled) {
+    return new ConfigSnapshot(enabled, pluginEnabled, defaultLocale, storage, database, login, rateLimit, cache,
+        breaker, suggestions, transfer, identity, metrics, localizedMessages);
+  }
+
+  /**
+   * Returns a copy of this snapshot with the whitelist switched.
+   *
+   * @param enabled Whether the whitelist is enforced.
+   * @return The new snapshot.
+   */
+  public ConfigSnapshot withPluginEnabled(boolean enabled) {
+    return new ConfigSnapshot(debugEnabled, enabled, defaultLocale, storage, database, login, rateLimit, cache,
+        breaker, suggestions, transfer, identity, metrics, localizedMessages);
+  }
+
+}
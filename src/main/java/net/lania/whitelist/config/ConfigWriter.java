@@ -0,0 +1,138 @@
+package net.lania.whitelist.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import dev.dejvokep.boostedyaml.YamlDocument;
+import lombok.val;
+
+/**
+ * Write-behind persistence of runtime changes to the configuration file.
+ * Changes are applied to the in-memory document right away, while the file is
+ * written later by a single background thread. Changes made until that write
+ * runs are saved together, so toggling a setting many times in a row costs a
+ * single write. The file is written to a temporary file first and renamed over
+ * the configuration, so a crash never leaves a truncated configuration behind.
+ */
+public class ConfigWriter {
+
+  private final Logger logger;
+  private final YamlDocument document;
+  private final Path file;
+  private final long delayMillis;
+
+  // Guards the document and the dirty flag, shared with the reloads of the document
+  private final Object lock;
+  // Serializes the file writes, so an older dump never replaces a newer one
+  private final Object fileLock = new Object();
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+      Thread.ofPlatform().name("vwl-config-writer").daemon().factory());
+
+  private boolean dirty;
+  private boolean scheduled;
+  private long dumped;
+  private long written;
+
+  /**
+   * Creates a writer for a configuration document.
+   *
+   * @param logger      The logger.
+   * @param document    The document to persist.
+   * @param file        The configuration file.
+   * @param lock        The lock held by everything else touching the document.
+   * @param delayMillis How long changes are collected before they are written.
+   */
+  public ConfigWriter(Logger logger, YamlDocument document, Path file, Object lock, long delayMillis) {
+    this.logger = logger;
+    this.document = document;
+    this.file = file;
+    this.lock = lock;
+    this.delayMillis = delayMillis;
+  }
+
+  /**
+   * Changes a value and schedules the file to be written.
+   *
+   * @param path  The path of the value.
+   * @param value The new value.
+   */
+  public void set(String path, Object value) {
+    synchronized (lock) {
+      document.set(path, value);
+      dirty = true;
+      // After close, changes are only written by an explicit flush
+      if (!scheduled && !executor.isShutdown()) {
+        scheduled = true;
+        executor.schedule(this::flushQuietly, delayMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Writes the pending changes to the file now, on the calling thread.
+   * Does nothing if there are no pending changes.
+   *
+   * @throws IOException If the file could not be written.
+   */
+  public void flush() throws IOException {
+    final String contents;
+    final long sequence;
+    synchronized (lock) {
+      scheduled = false;
+      if (!dirty) {
+        return;
+      }
+      contents = document.dump();
+      dirty = false;
+      sequence = ++dumped;
+    }
+
+    try {
+      write(sequence, contents);
+    } catch (IOException e) {
+      // Keep the changes pending for the next write
+      synchronized (lock) {
+        dirty = true;
+      }
+      throw e;
+    }
+  }
+
+  private void write(long sequence, String contents) throws IOException {
+    synchronized (fileLock) {
+      if (sequence <= written) {
+        return;
+      }
+      val temp = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.writeString(temp, contents, StandardCharsets.UTF_8);
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      written = sequence;
+    }
+  }
+
+  /**
+   * Writes the pending changes and stops the background thread.
+   */
+  public void close() {
+    executor.shutdown();
+    flushQuietly();
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (IOException e) {
+      logger.error("Failed to save the configuration file", e);
+    }
+  }
+
+}
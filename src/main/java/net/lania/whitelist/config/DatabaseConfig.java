@@ -1,15 +1,32 @@
 package net.lania.whitelist.config;
 
-import lombok.Data;
+import lombok.Builder;
+import lombok.Value;
 
-@Data
+@Value
+@Builder(toBuilder = true)
 public class DatabaseConfig {
 
+  @Builder.Default
   private String url = "jdbc:mariadb://%s:%s/%s?useSSL=false";
+  @Builder.Default
+  private String driverClassName = "org.mariadb.jdbc.Driver";
+  @Builder.Default
   private String user = "root";
+  @Builder.Default
   private String password = "1q2w3e4r";
+  @Builder.Default
   private String whitelistTable = "g_whitelist";
+  @Builder.Default
   private boolean createTables = true;
+  @Builder.Default
+  private boolean binaryUuids = false;
+  @Builder.Default
+  private int migrationChunkSize = 1000;
+  @Builder.Default
+  private String changeLogTable = "whitelist_changes";
+  @Builder.Default
+  private long changeLogRetention = 604800;
 
   // HikariCP fields
   private int maxPoolSize;
@@ -26,4 +43,14 @@ public class DatabaseConfig {
   private boolean elideSetAutoCommit;
   private boolean maintainTimeStats;
 
+  // Connection lanes
+  @Builder.Default
+  private int loginReservedConnections = 4;
+  @Builder.Default
+  private int suggestionConnections = 2;
+  @Builder.Default
+  private int adminConnections = 0;
+  @Builder.Default
+  private long adminWaitTimeout = 5000;
+
 }
@@ -0,0 +1,21 @@
+package net.lania.whitelist.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class IdentityConfig {
+
+  @Builder.Default
+  private boolean onlineMode = false;
+  @Builder.Default
+  private String profileEndpoint = "https://api.minecraftservices.com/minecraft/profile/lookup/bulk/byname";
+  @Builder.Default
+  private int batchSize = 10;
+  @Builder.Default
+  private long requestTimeout = 5000;
+  @Builder.Default
+  private int cacheSize = 10000;
+
+}
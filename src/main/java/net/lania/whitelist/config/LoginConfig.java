@@ -0,0 +1,27 @@
+package net.lania.whitelist.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class LoginConfig {
+
+  @Builder.Default
+  private long lookupTimeout = 5000;
+  @Builder.Default
+  private boolean allowOnTimeout = false;
+  @Builder.Default
+  private int maxConcurrentLookups = 10;
+  @Builder.Default
+  private int maxQueuedLookups = 1000;
+  @Builder.Default
+  private boolean batchLookups = false;
+  @Builder.Default
+  private long batchWindow = 5;
+  @Builder.Default
+  private int maxBatchSize = 100;
+  @Builder.Default
+  private String preLoginCheck = "off";
+
+}
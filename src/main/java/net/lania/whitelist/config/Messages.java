@@ -1,15 +1,16 @@
 package net.lania.whitelist.config;
 
-import lombok.Data;
-import lombok.experimental.Accessors;
+import lombok.Builder;
+import lombok.Value;
 import net.kyori.adventure.text.Component;
 
-@Data
-@Accessors(chain = true)
+@Value
+@Builder
 public class Messages {
 
   private Component kicked;
   private Component failedToCheckWhitelist;
   private Component insufficientPermission;
+  private Component rateLimited;
 
 }
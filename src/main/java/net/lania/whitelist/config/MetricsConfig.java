@@ -0,0 +1,17 @@
+package net.lania.whitelist.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class MetricsConfig {
+
+  @Builder.Default
+  private String exportFile = "";
+  @Builder.Default
+  private long exportInterval = 15;
+  @Builder.Default
+  private int httpPort = 0;
+
+}
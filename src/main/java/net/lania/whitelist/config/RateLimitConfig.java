@@ -0,0 +1,19 @@
+package net.lania.whitelist.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class RateLimitConfig {
+
+  @Builder.Default
+  private boolean enabled = false;
+  @Builder.Default
+  private int perMinute = 30;
+  @Builder.Default
+  private int burst = 10;
+  @Builder.Default
+  private long evictInterval = 60;
+
+}
@@ -0,0 +1,19 @@
+package net.lania.whitelist.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class StorageConfig {
+
+  @Builder.Default
+  private String type = "mysql";
+  @Builder.Default
+  private String localFile = "whitelist.log";
+
+  public boolean isLocal() {
+    return "local".equalsIgnoreCase(type);
+  }
+
+}
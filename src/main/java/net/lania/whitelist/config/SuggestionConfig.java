@@ -0,0 +1,17 @@
+package net.lania.whitelist.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class SuggestionConfig {
+
+  @Builder.Default
+  private int threads = 2;
+  @Builder.Default
+  private int maxQueued = 50;
+  @Builder.Default
+  private long debounce = 150;
+
+}
@@ -0,0 +1,15 @@
+package net.lania.whitelist.config;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class TransferConfig {
+
+  @Builder.Default
+  private int batchSize = 500;
+  @Builder.Default
+  private int progressInterval = 10000;
+
+}
@@ -1,6 +1,7 @@
 package net.lania.whitelist.handler;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -19,6 +20,7 @@ import net.lania.whitelist.ConfigManager;
 import net.lania.whitelist.Constants;
 import net.lania.whitelist.VelocityWhitelist;
 import net.lania.whitelist.service.WhitelistService;
+import net.lania.whitelist.service.WhitelistTransferService;
 
 @RequiredArgsConstructor
 public class VwlCommandHandler {
@@ -27,15 +29,21 @@ public class VwlCommandHandler {
   public static final String VWL_COMMAND_ACTION_ARGUMENT = "action";
   public static final String VWL_COMMAND_TARGET_ARGUMENT = "target";
 
-  private static final Map<String, String> USAGE_MESSAGE = Map.of(
-      "all", "/vwl add/del <player> | list <search> | enable/disable | reload | debug <on/off> ",
-      "add", "/vwl add <player>",
-      "del", "/vwl del <player>",
-      "list", "/vwl list <search>",
-      "enable", "/vwl enable",
-      "disable", "/vwl disable",
-      "reload", "/vwl reload",
-      "debug", "/vwl debug <on/off>");
+  private static final Map<String, String> USAGE_MESSAGE = Map.ofEntries(
+      Map.entry("all", "/vwl add/del <player...> | list <search> [page] | enable/disable | reload | status"
+          + " | stats [reset] | debug <on/off> | migrate | import/export <file> "),
+      Map.entry("add", "/vwl add <player> [player...]"),
+      Map.entry("del", "/vwl del <player> [player...]"),
+      Map.entry("list", "/vwl list <search> [page]"),
+      Map.entry("enable", "/vwl enable"),
+      Map.entry("disable", "/vwl disable"),
+      Map.entry("reload", "/vwl reload"),
+      Map.entry("status", "/vwl status"),
+      Map.entry("stats", "/vwl stats [reset]"),
+      Map.entry("debug", "/vwl debug <on/off>"),
+      Map.entry("migrate", "/vwl migrate"),
+      Map.entry("import", "/vwl import <file>"),
+      Map.entry("export", "/vwl export <file>"));
 
   private static final Component INSUFFICIENT_PERMISSION_MESSAGE = Component.text(
       "You do not have permission to use this command.",
@@ -47,6 +55,8 @@ public class VwlCommandHandler {
 
   private final WhitelistService whitelistService;
 
+  private final WhitelistTransferService transferService;
+
   /**
    * Sends a usage message to the command source.
    * This method constructs a message based on the specified subcommand.
@@ -74,7 +84,8 @@ public class VwlCommandHandler {
     val suggestions = new ArrayList<>(List.of("add", "del", "list"));
 
     if (context.getSource().hasPermission(Constants.BASE_PERMISSION_ADMIN)) {
-      suggestions.addAll(List.of("debug", "enable", "disable", "reload"));
+      suggestions.addAll(List.of("debug", "enable", "disable", "reload", "status", "stats", "migrate",
+          "import", "export"));
     }
 
     for (val suggestion : suggestions) {
@@ -88,7 +99,7 @@ public class VwlCommandHandler {
     val source = context.getSource();
     val action = context.getArgument(VWL_COMMAND_ACTION_ARGUMENT, String.class);
 
-    if (List.of("enable", "disable", "reload", "debug").contains(action.toLowerCase())) {
+    if (List.of("enable", "disable", "reload", "status", "stats", "debug", "migrate").contains(action.toLowerCase())) {
       if (!context.getSource().hasPermission(Constants.BASE_PERMISSION_ADMIN)) {
         context.getSource().sendMessage(INSUFFICIENT_PERMISSION_MESSAGE);
         return Command.SINGLE_SUCCESS;
@@ -112,6 +123,9 @@ public class VwlCommandHandler {
               "Error while reloading configuration. Check the console for details.", NamedTextColor.RED));
         }
       }
+      case "status" -> whitelistService.sendStatus(source);
+      case "stats" -> whitelistService.sendStats(source);
+      case "migrate" -> whitelistService.migrateUuids(source);
       default -> sendUsageMessage(source, action);
     }
 
@@ -128,11 +142,15 @@ public class VwlCommandHandler {
     // Check if there are at least two parts in the input
     if (parts.length > 1) {
       val action = parts[1].trim(); // Get the action (add/del)
-      // Ensure that the action is the last meaningful part of the input
-      if (parts.length == 2 && action.equalsIgnoreCase("del")) {
-        return whitelistService.getWhitelistedPlayerSuggestions(builder);
+      if (action.equalsIgnoreCase("del")) {
+        // del takes several players, only complete the one being typed
+        val remaining = builder.getRemaining();
+        val lastPlayer = builder.createOffset(builder.getStart() + remaining.lastIndexOf(' ') + 1);
+        return whitelistService.getWhitelistedPlayerSuggestions(context.getSource(), lastPlayer);
       } else if (action.equalsIgnoreCase("debug")) {
-        builder.suggest("on").suggest("off");
+        return builder.suggest("on").suggest("off").buildFuture();
+      } else if (action.equalsIgnoreCase("stats")) {
+        return builder.suggest("reset").buildFuture();
       }
     }
 
@@ -142,12 +160,53 @@ public class VwlCommandHandler {
   public int handleActionWithTarget(CommandContext<CommandSource> context) {
     val source = context.getSource();
     val action = context.getArgument(VWL_COMMAND_ACTION_ARGUMENT, String.class);
-    val target = context.getArgument(VWL_COMMAND_TARGET_ARGUMENT, String.class);
+    val target = context.getArgument(VWL_COMMAND_TARGET_ARGUMENT, String.class).trim();
 
     switch (action.toLowerCase()) {
-      // case "add" -> whitelistService.addWhitelist(source, target);
-      // case "del" -> whitelistService.delWhitelist(source, target);
-      case "list" -> whitelistService.listWhitelist(source, target);
+      case "add", "del" -> {
+        val usernames = Arrays.stream(target.trim().split("\\s+"))
+            .filter(name -> !name.isEmpty())
+            .toList();
+        if (usernames.isEmpty()) {
+          sendUsageMessage(source, action);
+        } else if (action.equalsIgnoreCase("add")) {
+          whitelistService.addWhitelist(source, usernames);
+        } else {
+          whitelistService.delWhitelist(source, usernames);
+        }
+      }
+      case "list" -> {
+        val parts = target.split("\\s+");
+        if (parts.length > 2 || (parts.length == 2 && !parts[1].matches("\\d{1,9}"))) {
+          sendUsageMessage(source, action);
+        } else {
+          whitelistService.listWhitelist(source, parts[0], parts.length == 2 ? Integer.parseInt(parts[1]) : 1);
+        }
+      }
+      case "import", "export" -> {
+        if (!source.hasPermission(Constants.BASE_PERMISSION_ADMIN)) {
+          source.sendMessage(INSUFFICIENT_PERMISSION_MESSAGE);
+          return Command.SINGLE_SUCCESS;
+        }
+
+        if (action.equalsIgnoreCase("import")) {
+          transferService.importWhitelist(source, target);
+        } else {
+          transferService.exportWhitelist(source, target);
+        }
+      }
+      case "stats" -> {
+        if (!source.hasPermission(Constants.BASE_PERMISSION_ADMIN)) {
+          source.sendMessage(INSUFFICIENT_PERMISSION_MESSAGE);
+          return Command.SINGLE_SUCCESS;
+        }
+
+        if (target.equalsIgnoreCase("reset")) {
+          whitelistService.resetStats(source);
+        } else {
+          sendUsageMessage(source, "stats");
+        }
+      }
       case "debug" -> {
         if (!source.hasPermission(Constants.BASE_PERMISSION_ADMIN)) {
           source.sendMessage(INSUFFICIENT_PERMISSION_MESSAGE);
@@ -0,0 +1,147 @@
+package net.lania.whitelist.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.val;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the style of
+ * HdrHistogram.
+ * Values are recorded in microseconds. Every power of two is split into 32
+ * linear buckets, so a reported percentile is at most ~3% above the real
+ * value, whatever its magnitude, while the whole histogram is a fixed array of
+ * about a thousand counters. Recording is a couple of shifts and atomic
+ * increments and never allocates.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Values above ~19 hours end up in the last bucket
+  private static final int MAX_EXPONENT = 36;
+  private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+  /**
+   * Records a duration.
+   *
+   * @param nanos The duration in nanoseconds.
+   */
+  public void recordNanos(long nanos) {
+    val micros = Math.min(MAX_VALUE, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    counts.incrementAndGet(indexOf(micros));
+    count.increment();
+    sum.add(micros);
+    max.accumulate(micros);
+  }
+
+  /**
+   * Records the time elapsed since a start time.
+   *
+   * @param startNanos The start time, from {@link System#nanoTime()}.
+   */
+  public void recordSince(long startNanos) {
+    recordNanos(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Gets the number of recorded values.
+   *
+   * @return The number of values.
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Gets the sum of the recorded values.
+   *
+   * @return The sum in microseconds.
+   */
+  public long getSumMicros() {
+    return sum.sum();
+  }
+
+  /**
+   * Gets the largest recorded value.
+   *
+   * @return The largest value in microseconds, 0 if nothing was recorded.
+   */
+  public long getMaxMicros() {
+    return max.get();
+  }
+
+  /**
+   * Gets the value below which the given fraction of the recorded values
+   * fall. Values recorded while this runs may or may not be included.
+   *
+   * @param quantile The fraction, between 0 and 1 (0.99 for p99).
+   * @return The value in microseconds, rounded up to the end of its bucket, 0 if
+   *         nothing was recorded.
+   */
+  public long getValueAtQuantile(double quantile) {
+    var total = 0L;
+    for (var i = 0; i < BUCKETS; i++) {
+      total += counts.get(i);
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    val rank = Math.max(1, (long) Math.ceil(quantile * total));
+    var seen = 0L;
+    for (var i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), getMaxMicros());
+      }
+    }
+    return getMaxMicros();
+  }
+
+  /**
+   * Clears every recorded value.
+   */
+  public void reset() {
+    for (var i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  /**
+   * Maps a value to its bucket. Values below 32 get a bucket each, larger
+   * values share a bucket with the values having the same five leading bits.
+   */
+  private static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    val exponent = 63 - Long.numberOfLeadingZeros(value);
+    val shift = exponent - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  /**
+   * Gets the largest value mapped to a bucket.
+   */
+  private static long upperBoundOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    val shift = index / SUB_BUCKETS - 1;
+    val subBucket = index % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+
+}
@@ -0,0 +1,116 @@
+package net.lania.whitelist.metrics;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.sun.net.httpserver.HttpServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+
+import lombok.val;
+import net.lania.whitelist.ConfigManager;
+import net.lania.whitelist.VelocityWhitelist;
+
+/**
+ * Publishes the metrics in the Prometheus text format.
+ * They can be written to a file in the plugin data directory on a fixed
+ * interval, for the node exporter textfile collector, and served over HTTP on
+ * 127.0.0.1 only. Both are off unless configured.
+ */
+public class MetricsExporter {
+
+  private final VelocityWhitelist plugin;
+  private final Logger logger;
+  private final ConfigManager configHandler;
+  private final WhitelistMetrics metrics;
+
+  private ScheduledTask exportTask;
+  private HttpServer httpServer;
+  private ExecutorService httpExecutor;
+
+  public MetricsExporter(VelocityWhitelist plugin, Logger logger, ConfigManager configHandler,
+      WhitelistMetrics metrics) {
+    this.plugin = plugin;
+    this.logger = logger;
+    this.configHandler = configHandler;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Starts the configured exports.
+   */
+  public void start() {
+    val cfg = configHandler.getMetrics();
+
+    if (!cfg.getExportFile().isEmpty()) {
+      exportTask = plugin.getServer().getScheduler()
+          .buildTask(plugin, this::writeFile)
+          .repeat(cfg.getExportInterval(), TimeUnit.SECONDS)
+          .schedule();
+    }
+
+    if (cfg.getHttpPort() > 0) {
+      try {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), cfg.getHttpPort()), 0);
+        httpServer.createContext("/metrics", exchange -> {
+          val body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+          exchange.sendResponseHeaders(200, body.length);
+          try (val out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+        httpExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("vwl-metrics-http").daemon().factory());
+        httpServer.setExecutor(httpExecutor);
+        httpServer.start();
+        logger.info("Serving metrics on http://127.0.0.1:{}/metrics", cfg.getHttpPort());
+      } catch (IOException e) {
+        logger.error("Failed to start the metrics endpoint on port {}", cfg.getHttpPort(), e);
+        httpServer = null;
+      }
+    }
+  }
+
+  /**
+   * Stops the exports.
+   */
+  public void stop() {
+    if (exportTask != null) {
+      exportTask.cancel();
+      exportTask = null;
+    }
+    if (httpServer != null) {
+      httpServer.stop(0);
+      httpServer = null;
+    }
+    if (httpExecutor != null) {
+      httpExecutor.shutdownNow();
+      httpExecutor = null;
+    }
+  }
+
+  /**
+   * Writes the metrics file through a temporary file, so a scraper never reads
+   * a partially written file.
+   */
+  private void writeFile() {
+    val file = plugin.getDataDirectory().resolve(configHandler.getMetrics().getExportFile());
+    val temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      Files.writeString(temp, metrics.toPrometheus(), StandardCharsets.UTF_8);
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.warn("Failed to write the metrics file {}", file.getFileName(), e);
+    }
+  }
+
+}
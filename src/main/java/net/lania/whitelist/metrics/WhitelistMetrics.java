@@ -0,0 +1,214 @@
+package net.lania.whitelist.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+import lombok.val;
+import net.lania.whitelist.storage.PoolStats;
+import net.lania.whitelist.storage.WhitelistStorage;
+
+/**
+ * Counters and latency histograms of the whitelist checks.
+ * Recording only touches striped counters and atomic histogram buckets, so it
+ * can be called on the login path without locking or formatting anything.
+ * Everything is formatted on demand, for /vwl stats or the Prometheus export.
+ */
+public class WhitelistMetrics {
+
+  private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+  private final WhitelistStorage storage;
+
+  @Getter
+  private final LatencyHistogram loginLatency = new LatencyHistogram();
+  @Getter
+  private final LatencyHistogram suggestionLatency = new LatencyHistogram();
+
+  private final LongAdder allowed = new LongAdder();
+  private final LongAdder denied = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder cacheHits = new LongAdder();
+  private final LongAdder preLoginDenied = new LongAdder();
+  private final LongAdder rateLimited = new LongAdder();
+
+  public WhitelistMetrics(WhitelistStorage storage) {
+    this.storage = storage;
+  }
+
+  /**
+   * Records the outcome and duration of a login check.
+   *
+   * @param startNanos The time the check started, from {@link System#nanoTime()}.
+   * @param result     1 if the player was allowed, 0 if denied, -1 on error.
+   * @param fromCache  Whether the check was answered from the cache.
+   */
+  public void recordLogin(long startNanos, int result, boolean fromCache) {
+    loginLatency.recordSince(startNanos);
+    if (result == 1) {
+      allowed.increment();
+    } else if (result == 0) {
+      denied.increment();
+    } else {
+      errors.increment();
+    }
+    if (fromCache) {
+      cacheHits.increment();
+    }
+  }
+
+  /**
+   * Records a player denied at pre-login, before the login check.
+   */
+  public void recordPreLoginDenied() {
+    preLoginDenied.increment();
+  }
+
+  /**
+   * Records a connection refused by the login rate limiter.
+   */
+  public void recordRateLimited() {
+    rateLimited.increment();
+  }
+
+  /**
+   * Gets the number of login checks that allowed the player.
+   *
+   * @return The count since startup or the last reset.
+   */
+  public long getAllowed() {
+    return allowed.sum();
+  }
+
+  /**
+   * Gets the number of login checks that denied the player.
+   *
+   * @return The count since startup or the last reset.
+   */
+  public long getDenied() {
+    return denied.sum();
+  }
+
+  /**
+   * Gets the number of login checks that could not be answered.
+   *
+   * @return The count since startup or the last reset.
+   */
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  /**
+   * Gets the number of login checks answered from the cache.
+   *
+   * @return The count since startup or the last reset.
+   */
+  public long getCacheHits() {
+    return cacheHits.sum();
+  }
+
+  /**
+   * Gets the number of players denied at pre-login.
+   *
+   * @return The count since startup or the last reset.
+   */
+  public long getPreLoginDenied() {
+    return preLoginDenied.sum();
+  }
+
+  /**
+   * Gets the number of connections refused by the login rate limiter.
+   *
+   * @return The count since startup or the last reset.
+   */
+  public long getRateLimited() {
+    return rateLimited.sum();
+  }
+
+  /**
+   * Reads the state of the storage connection pool.
+   *
+   * @return The pool state, or null if the storage has no pool.
+   */
+  public PoolStats getPoolStats() {
+    return storage.getPoolStats();
+  }
+
+  /**
+   * Clears every counter and histogram.
+   */
+  public void reset() {
+    loginLatency.reset();
+    suggestionLatency.reset();
+    allowed.reset();
+    denied.reset();
+    errors.reset();
+    cacheHits.reset();
+    preLoginDenied.reset();
+    rateLimited.reset();
+  }
+
+  /**
+   * Formats the metrics in the Prometheus text exposition format.
+   *
+   * @return The metrics, one sample per line.
+   */
+  public String toPrometheus() {
+    val out = new StringBuilder(2048);
+
+    out.append("# HELP vwl_logins_total Login whitelist checks by outcome.\n");
+    out.append("# TYPE vwl_logins_total counter\n");
+    out.append("vwl_logins_total{outcome=\"allowed\"} ").append(getAllowed()).append('\n');
+    out.append("vwl_logins_total{outcome=\"denied\"} ").append(getDenied()).append('\n');
+    out.append("vwl_logins_total{outcome=\"error\"} ").append(getErrors()).append('\n');
+
+    out.append("# HELP vwl_login_cache_hits_total Login checks answered from the in-memory whitelist.\n");
+    out.append("# TYPE vwl_login_cache_hits_total counter\n");
+    out.append("vwl_login_cache_hits_total ").append(getCacheHits()).append('\n');
+
+    out.append("# HELP vwl_prelogin_denied_total Players denied at pre-login, before authentication.\n");
+    out.append("# TYPE vwl_prelogin_denied_total counter\n");
+    out.append("vwl_prelogin_denied_total ").append(getPreLoginDenied()).append('\n');
+
+    out.append("# HELP vwl_rate_limited_total Connections refused by the per-address login rate limiter.\n");
+    out.append("# TYPE vwl_rate_limited_total counter\n");
+    out.append("vwl_rate_limited_total ").append(getRateLimited()).append('\n');
+
+    appendSummary(out, "vwl_login_duration_seconds", "Time taken by login whitelist checks.", loginLatency);
+    appendSummary(out, "vwl_suggestion_duration_seconds", "Time taken by username suggestion queries.",
+        suggestionLatency);
+
+    val pool = getPoolStats();
+    if (pool != null) {
+      out.append("# HELP vwl_pool_connections Connections of the database pool by state.\n");
+      out.append("# TYPE vwl_pool_connections gauge\n");
+      out.append("vwl_pool_connections{state=\"active\"} ").append(pool.active()).append('\n');
+      out.append("vwl_pool_connections{state=\"idle\"} ").append(pool.idle()).append('\n');
+      out.append("vwl_pool_connections{state=\"total\"} ").append(pool.total()).append('\n');
+      out.append("vwl_pool_connections{state=\"max\"} ").append(pool.maximum()).append('\n');
+      out.append("# HELP vwl_pool_threads_awaiting Threads waiting for a database connection.\n");
+      out.append("# TYPE vwl_pool_threads_awaiting gauge\n");
+      out.append("vwl_pool_threads_awaiting ").append(pool.waiting()).append('\n');
+      out.append("# HELP vwl_pool_shed_total Queries refused by the connection lanes.\n");
+      out.append("# TYPE vwl_pool_shed_total counter\n");
+      out.append("vwl_pool_shed_total ").append(pool.shed()).append('\n');
+    }
+    return out.toString();
+  }
+
+  private static void appendSummary(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(" summary\n");
+    for (val quantile : QUANTILES) {
+      out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+          .append(seconds(histogram.getValueAtQuantile(quantile))).append('\n');
+    }
+    out.append(name).append("_sum ").append(seconds(histogram.getSumMicros())).append('\n');
+    out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+  }
+
+  private static String seconds(long micros) {
+    return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+  }
+
+}
@@ -0,0 +1,217 @@
+package net.lania.whitelist.service;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import lombok.val;
+import net.lania.whitelist.ConfigManager;
+import net.lania.whitelist.UuidUtils;
+import net.lania.whitelist.VelocityWhitelist;
+
+/**
+ * Turns player names into UUIDs.
+ * In offline mode the UUID is derived from the name. In online mode names are
+ * looked up through the configured profile endpoint, which takes a JSON array
+ * of names and answers with the matching profiles, so many names cost a single
+ * request per batch. Recent online results are kept in a bounded LRU cache.
+ * Offline UUIDs are not cached: deriving one is a single MD5 on a per-thread
+ * digest, cheaper than a shared cache lock on the pre-login path, and names
+ * sent by unknown clients would only churn the cache.
+ */
+public class IdentityResolver {
+
+  private final VelocityWhitelist plugin;
+  private final Logger logger;
+  private final ConfigManager configHandler;
+
+  // Keyed by lower-case name, online names are not case-sensitive
+  private final Map<String, UUID> onlineCache;
+
+  private HttpClient httpClient;
+
+  public IdentityResolver(VelocityWhitelist plugin, Logger logger, ConfigManager configHandler) {
+    this.plugin = plugin;
+    this.logger = logger;
+    this.configHandler = configHandler;
+    this.onlineCache = Collections.synchronizedMap(new LinkedHashMap<String, UUID>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, UUID> eldest) {
+        return size() > configHandler.getIdentity().getCacheSize();
+      }
+    });
+  }
+
+  /**
+   * Gets the offline mode UUID of a player name.
+   *
+   * @param username The player name.
+   * @return The UUID derived from the name.
+   */
+  public UUID resolveOffline(@NotNull String username) {
+    return UuidUtils.generateUniqueId(username);
+  }
+
+  /**
+   * Resolves player names to UUIDs with the configured mode.
+   * In online mode this blocks on the profile endpoint, call it off the login
+   * and command threads.
+   *
+   * @param usernames The player names.
+   * @return The UUID of every name that exists, keyed by the name as given, or
+   *         null if the profile endpoint could not be reached.
+   */
+  public Map<String, UUID> resolveAll(@NotNull Collection<String> usernames) {
+    val resolved = new HashMap<String, UUID>();
+    if (!configHandler.getIdentity().isOnlineMode()) {
+      usernames.forEach(username -> resolved.put(username, resolveOffline(username)));
+      return resolved;
+    }
+
+    // Names missing from the cache, once each whatever their case
+    val missing = new LinkedHashSet<String>();
+    for (val username : usernames) {
+      val cached = onlineCache.get(username.toLowerCase(Locale.ROOT));
+      if (cached != null) {
+        resolved.put(username, cached);
+      } else {
+        missing.add(username.toLowerCase(Locale.ROOT));
+      }
+    }
+    if (missing.isEmpty()) {
+      return resolved;
+    }
+
+    val batchSize = configHandler.getIdentity().getBatchSize();
+    val pending = new ArrayList<>(missing);
+    for (var from = 0; from < pending.size(); from += batchSize) {
+      val profiles = fetchProfiles(pending.subList(from, Math.min(pending.size(), from + batchSize)));
+      if (profiles == null) {
+        return null;
+      }
+      if (configHandler.getIdentity().getCacheSize() > 0) {
+        onlineCache.putAll(profiles);
+      }
+      for (val username : usernames) {
+        val uniqueId = profiles.get(username.toLowerCase(Locale.ROOT));
+        if (uniqueId != null) {
+          resolved.put(username, uniqueId);
+        }
+      }
+    }
+    return resolved;
+  }
+
+  /**
+   * Clears the cached names, e.g. after the identity settings changed.
+   */
+  public void clearCache() {
+    onlineCache.clear();
+  }
+
+  /**
+   * Looks up one batch of names on the profile endpoint.
+   *
+   * @param names The lower-case names, at most one batch.
+   * @return The UUIDs of the names that exist, keyed by lower-case name, or null
+   *         on error.
+   */
+  private Map<String, UUID> fetchProfiles(List<String> names) {
+    val cfg = configHandler.getIdentity();
+    plugin.logDebug("Looking up {} profiles on {}", names.size(), cfg.getProfileEndpoint());
+
+    try {
+      val body = new StringWriter();
+      try (val writer = new JsonWriter(body)) {
+        writer.beginArray();
+        for (val name : names) {
+          writer.value(name);
+        }
+        writer.endArray();
+      }
+
+      val request = HttpRequest.newBuilder(URI.create(cfg.getProfileEndpoint()))
+          .timeout(Duration.ofMillis(cfg.getRequestTimeout()))
+          .header("Content-Type", "application/json")
+          .header("Accept", "application/json")
+          .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+          .build();
+      val response = httpClient().send(request, HttpResponse.BodyHandlers.ofString());
+      if (response.statusCode() != 200) {
+        logger.warn("Profile lookup failed with HTTP status {}", response.statusCode());
+        return null;
+      }
+      return readProfiles(response.body());
+    } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+      logger.warn("Profile lookup on {} failed: {}", cfg.getProfileEndpoint(), e.getMessage());
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  /**
+   * Reads a JSON array of profiles with an "id" and a "name".
+   */
+  private static Map<String, UUID> readProfiles(String json) throws IOException {
+    val profiles = new HashMap<String, UUID>();
+    try (val reader = new JsonReader(new StringReader(json))) {
+      reader.beginArray();
+      while (reader.hasNext()) {
+        String id = null;
+        String name = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+          val key = reader.nextName();
+          if (reader.peek() == JsonToken.STRING && "id".equals(key)) {
+            id = reader.nextString();
+          } else if (reader.peek() == JsonToken.STRING && "name".equals(key)) {
+            name = reader.nextString();
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+
+        if (id != null && name != null) {
+          profiles.put(name.toLowerCase(Locale.ROOT), UuidUtils.parse(id));
+        }
+      }
+      reader.endArray();
+    }
+    return profiles;
+  }
+
+  private synchronized HttpClient httpClient() {
+    if (httpClient == null) {
+      httpClient = HttpClient.newBuilder()
+          .connectTimeout(Duration.ofMillis(configHandler.getIdentity().getRequestTimeout()))
+          .build();
+    }
+    return httpClient;
+  }
+
+}
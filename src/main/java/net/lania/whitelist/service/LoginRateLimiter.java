@@ -0,0 +1,139 @@
+package net.lania.whitelist.service;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.velocitypowered.api.scheduler.ScheduledTask;
+
+import lombok.val;
+import net.lania.whitelist.ConfigManager;
+import net.lania.whitelist.VelocityWhitelist;
+import net.lania.whitelist.metrics.WhitelistMetrics;
+
+/**
+ * Token bucket rate limiter for login attempts, keyed by remote address.
+ * IPv6 addresses share the bucket of their /64 network, the smallest block
+ * usually handed to a single customer, so rotating through the addresses of
+ * one network does not get around the limit.
+ * Each bucket is a single atomic "theoretical arrival time" (the generic cell
+ * rate algorithm): taking a token is one compare-and-set, without locks, and
+ * buckets of different addresses never contend beyond the striping of the
+ * map. A bucket that has refilled completely holds no information, so such
+ * buckets are evicted periodically and the map only grows with the addresses
+ * that connected recently.
+ */
+public class LoginRateLimiter {
+
+  // Leading bytes of an IPv6 address kept in its bucket key, a /64 prefix
+  private static final int IPV6_PREFIX_BYTES = 8;
+
+  private final VelocityWhitelist plugin;
+  private final ConfigManager configHandler;
+  private final WhitelistMetrics metrics;
+
+  // Time at which each bucket will be full again, from System.nanoTime()
+  private final ConcurrentHashMap<InetAddress, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+  private ScheduledTask evictTask;
+
+  public LoginRateLimiter(VelocityWhitelist plugin, ConfigManager configHandler, WhitelistMetrics metrics) {
+    this.plugin = plugin;
+    this.configHandler = configHandler;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Starts the periodic eviction of idle buckets.
+   */
+  public void start() {
+    evictTask = plugin.getServer().getScheduler()
+        .buildTask(plugin, this::evictIdle)
+        .repeat(configHandler.getRateLimit().getEvictInterval(), TimeUnit.SECONDS)
+        .schedule();
+  }
+
+  /**
+   * Stops the eviction and forgets every bucket.
+   */
+  public void stop() {
+    if (evictTask != null) {
+      evictTask.cancel();
+      evictTask = null;
+    }
+    buckets.clear();
+  }
+
+  /**
+   * Takes a token from the bucket of an address.
+   *
+   * @param address The remote address of the connection.
+   * @return True if the attempt is within the limit, false if it must be
+   *         refused.
+   */
+  public boolean tryAcquire(@NotNull InetAddress address) {
+    val cfg = configHandler.getRateLimit();
+    if (!cfg.isEnabled()) {
+      return true;
+    }
+
+    val interval = TimeUnit.MINUTES.toNanos(1) / cfg.getPerMinute();
+    val tolerance = interval * (cfg.getBurst() - 1);
+    val now = System.nanoTime();
+    val bucket = buckets.computeIfAbsent(bucketKey(address), key -> new AtomicLong(now));
+    while (true) {
+      val full = bucket.get();
+      if (full - now > tolerance) {
+        metrics.recordRateLimited();
+        return false;
+      }
+      if (bucket.compareAndSet(full, (full - now > 0 ? full : now) + interval)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Gets the address a bucket is kept under: the address itself for IPv4, the
+   * /64 network for IPv6.
+   */
+  private static InetAddress bucketKey(InetAddress address) {
+    if (!(address instanceof Inet6Address)) {
+      return address;
+    }
+    val bytes = address.getAddress();
+    Arrays.fill(bytes, IPV6_PREFIX_BYTES, bytes.length, (byte) 0);
+    try {
+      return InetAddress.getByAddress(bytes);
+    } catch (UnknownHostException e) {
+      // Only thrown for an address of illegal length
+      return address;
+    }
+  }
+
+  /**
+   * Gets the number of addresses with a bucket.
+   *
+   * @return The number of tracked addresses.
+   */
+  public int getTrackedAddresses() {
+    return buckets.size();
+  }
+
+  /**
+   * Removes the buckets that have refilled completely. An attempt racing with
+   * the removal may update a bucket that is gone, which at worst grants that
+   * address one more burst.
+   */
+  private void evictIdle() {
+    val now = System.nanoTime();
+    buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+  }
+
+}
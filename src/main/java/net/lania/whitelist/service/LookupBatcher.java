@@ -0,0 +1,140 @@
+package net.lania.whitelist.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.NotNull;
+
+import lombok.val;
+import net.lania.whitelist.storage.WhitelistStorage;
+
+/**
+ * Collects whitelist lookups for a short window and resolves them with a
+ * single IN-list query.
+ * A batch is sent as soon as it holds the maximum number of UUIDs, or when the
+ * window of the first queued lookup has passed, whichever comes first. This
+ * trades a few milliseconds of latency for far fewer round trips when many
+ * players join at once.
+ */
+public class LookupBatcher {
+
+  private final WhitelistStorage storage;
+  private final Executor executor;
+  private final long windowMillis;
+  private final int maxBatchSize;
+  private final ScheduledExecutorService timer;
+
+  private final Object lock = new Object();
+  private Map<UUID, CompletableFuture<Integer>> pending = new HashMap<>();
+  private ScheduledFuture<?> scheduledFlush;
+
+  /**
+   * Creates a lookup batcher.
+   *
+   * @param storage      The storage used to resolve batches.
+   * @param executor     The executor running the batch queries.
+   * @param windowMillis How long the first lookup of a batch may wait for
+   *                     others to join it (ms).
+   * @param maxBatchSize The number of lookups that triggers an immediate flush.
+   */
+  public LookupBatcher(WhitelistStorage storage, Executor executor, long windowMillis, int maxBatchSize) {
+    this.storage = storage;
+    this.executor = executor;
+    this.windowMillis = Math.max(1, windowMillis);
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.timer = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("vwl-lookup-batcher").daemon().factory());
+  }
+
+  /**
+   * Queues a lookup for a UUID.
+   *
+   * @param uniqueId The UUID to look up.
+   * @return A future completed with 1 if the UUID is whitelisted, 0 if not and
+   *         -1 if the batch query failed. Fails with a
+   *         RejectedExecutionException if the executor is saturated.
+   */
+  public CompletableFuture<Integer> submit(@NotNull UUID uniqueId) {
+    Map<UUID, CompletableFuture<Integer>> batch = null;
+    final CompletableFuture<Integer> future;
+
+    synchronized (lock) {
+      future = pending.computeIfAbsent(uniqueId, key -> new CompletableFuture<>());
+      if (pending.size() >= maxBatchSize) {
+        batch = takePending();
+      } else if (scheduledFlush == null) {
+        scheduledFlush = timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    if (batch != null) {
+      dispatch(batch);
+    }
+    return future;
+  }
+
+  /**
+   * Sends the lookups queued so far, without waiting for the window to end.
+   */
+  public void flush() {
+    final Map<UUID, CompletableFuture<Integer>> batch;
+    synchronized (lock) {
+      batch = takePending();
+    }
+    if (!batch.isEmpty()) {
+      dispatch(batch);
+    }
+  }
+
+  /**
+   * Stops the batch timer. Lookups still queued are failed.
+   */
+  public void shutdown() {
+    timer.shutdownNow();
+
+    final Map<UUID, CompletableFuture<Integer>> batch;
+    synchronized (lock) {
+      batch = takePending();
+    }
+    batch.values().forEach(future -> future.completeExceptionally(
+        new RejectedExecutionException("Lookup batcher is shut down")));
+  }
+
+  /**
+   * Detaches the queued lookups and cancels the pending flush.
+   * Must be called while holding the lock.
+   */
+  private Map<UUID, CompletableFuture<Integer>> takePending() {
+    val batch = pending;
+    pending = new HashMap<>();
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+    return batch;
+  }
+
+  /**
+   * Runs the query for a batch on the executor and completes every lookup in it.
+   */
+  private void dispatch(Map<UUID, CompletableFuture<Integer>> batch) {
+    try {
+      executor.execute(() -> {
+        val found = storage.findEntriesByUniqueIds(batch.keySet());
+        batch.forEach((uniqueId, future) -> future.complete(
+            found == null ? -1 : found.contains(uniqueId) ? 1 : 0));
+      });
+    } catch (RejectedExecutionException e) {
+      batch.values().forEach(future -> future.completeExceptionally(e));
+    }
+  }
+
+}
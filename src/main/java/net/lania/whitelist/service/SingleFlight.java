@@ -0,0 +1,65 @@
+package net.lania.whitelist.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import lombok.val;
+
+/**
+ * Coalesces concurrent asynchronous loads of the same key.
+ * While a load for a key is in flight, further callers for that key receive
+ * the pending result instead of starting their own load. The entry is removed
+ * as soon as the load completes, so results are never cached beyond that.
+ *
+ * @param <K> The key type.
+ * @param <V> The result type.
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Runs the loader for a key, unless a load for the same key is in flight.
+   * Callers must not complete the returned future themselves, as it is shared
+   * with every other caller for the key. Use {@link CompletableFuture#copy()}
+   * before applying per-caller timeouts.
+   *
+   * @param key    The key to load.
+   * @param loader Starts the load for the key. Only called if no load for the
+   *               key is in flight.
+   * @return The shared future of the in-flight load.
+   */
+  public CompletableFuture<V> execute(K key, Function<K, CompletableFuture<V>> loader) {
+    val pending = new CompletableFuture<V>();
+    val existing = inFlight.putIfAbsent(key, pending);
+    if (existing != null) {
+      return existing;
+    }
+
+    try {
+      loader.apply(key).whenComplete((value, ex) -> {
+        inFlight.remove(key, pending);
+        if (ex != null) {
+          pending.completeExceptionally(ex);
+        } else {
+          pending.complete(value);
+        }
+      });
+    } catch (RuntimeException e) {
+      inFlight.remove(key, pending);
+      pending.completeExceptionally(e);
+    }
+    return pending;
+  }
+
+  /**
+   * Gets the number of loads currently in flight.
+   *
+   * @return The number of keys being loaded.
+   */
+  public int size() {
+    return inFlight.size();
+  }
+
+}
@@ -0,0 +1,187 @@
+package net.lania.whitelist.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import com.velocitypowered.api.command.CommandSource;
+
+import lombok.val;
+
+/**
+ * Runs blocking suggestion queries on a dedicated, bounded executor.
+ * Every command source has at most one pending request. A request waits for
+ * the debounce delay before its query starts, and a newer request from the
+ * same source supersedes it: a request that has not started yet is cancelled,
+ * and the result of one that is already running is dropped. Superseded and
+ * rejected requests complete with no suggestions.
+ */
+public class SuggestionDispatcher {
+
+  private final Logger logger;
+  private final ExecutorService executor;
+  private final ScheduledExecutorService timer;
+  private final long debounceMillis;
+
+  private final ConcurrentHashMap<CommandSource, Request> latest = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a suggestion dispatcher.
+   *
+   * @param logger         The logger used to report failed queries.
+   * @param threads        The number of queries that may run at the same time.
+   * @param maxQueued      The number of queries that may wait for a thread
+   *                       before new ones are rejected.
+   * @param debounceMillis How long a request waits for a newer one before its
+   *                       query starts (ms).
+   */
+  public SuggestionDispatcher(Logger logger, int threads, int maxQueued, long debounceMillis) {
+    this.logger = logger;
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(maxQueued), Thread.ofPlatform().name("vwl-suggest-", 0).daemon().factory());
+    this.timer = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("vwl-suggest-timer").daemon().factory());
+    this.debounceMillis = Math.max(0, debounceMillis);
+  }
+
+  /**
+   * Queues a suggestion query for a command source, superseding its previous
+   * request.
+   *
+   * @param source  The CommandSource asking for suggestions.
+   * @param builder The SuggestionsBuilder to add suggestions to.
+   * @param query   Looks up the suggestions for the remaining input. Runs on
+   *                the suggestion executor and may block.
+   * @return A CompletableFuture containing the suggestions.
+   */
+  public CompletableFuture<Suggestions> submit(CommandSource source, SuggestionsBuilder builder,
+      Function<String, List<String>> query) {
+    val request = new Request(source, builder, query);
+
+    val previous = latest.put(source, request);
+    if (previous != null) {
+      previous.supersede();
+    }
+
+    try {
+      request.scheduled = timer.schedule(request::dispatch, debounceMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      request.finishEmpty();
+    }
+    return request.result;
+  }
+
+  /**
+   * Stops the executors. Pending requests complete with no suggestions.
+   */
+  public void shutdown() {
+    timer.shutdownNow();
+    executor.shutdownNow();
+    latest.values().forEach(Request::supersede);
+    latest.clear();
+  }
+
+  /**
+   * A single suggestion request of a command source.
+   */
+  private final class Request {
+
+    private final CommandSource source;
+    private final SuggestionsBuilder builder;
+    private final Function<String, List<String>> query;
+    private final CompletableFuture<Suggestions> result = new CompletableFuture<>();
+
+    private volatile boolean superseded;
+    private volatile ScheduledFuture<?> scheduled;
+    private volatile Future<?> running;
+
+    private Request(CommandSource source, SuggestionsBuilder builder, Function<String, List<String>> query) {
+      this.source = source;
+      this.builder = builder;
+      this.query = query;
+    }
+
+    /**
+     * Hands the query over to the executor once the debounce delay has passed.
+     */
+    private void dispatch() {
+      if (superseded) {
+        return;
+      }
+      try {
+        running = executor.submit(this::run);
+      } catch (RejectedExecutionException e) {
+        logger.debug("Suggestion query rejected, too many pending queries");
+        finishEmpty();
+      }
+    }
+
+    /**
+     * Runs the query and completes the request, unless it was superseded.
+     */
+    private void run() {
+      if (superseded) {
+        return;
+      }
+
+      try {
+        val names = query.apply(builder.getRemaining());
+        if (superseded) {
+          return;
+        }
+        names.forEach(builder::suggest);
+        result.complete(builder.build());
+      } catch (RuntimeException e) {
+        logger.error("Error while looking up suggestions", e);
+        result.complete(emptySuggestions());
+      } finally {
+        latest.remove(source, this);
+      }
+    }
+
+    /**
+     * Marks the request as replaced by a newer one and completes it empty.
+     */
+    private void supersede() {
+      superseded = true;
+
+      val pendingTimer = scheduled;
+      if (pendingTimer != null) {
+        pendingTimer.cancel(false);
+      }
+      val pendingQuery = running;
+      if (pendingQuery != null) {
+        pendingQuery.cancel(false);
+      }
+      result.complete(emptySuggestions());
+    }
+
+    /**
+     * Completes the request empty and forgets it.
+     */
+    private void finishEmpty() {
+      latest.remove(source, this);
+      result.complete(emptySuggestions());
+    }
+
+    private Suggestions emptySuggestions() {
+      return new SuggestionsBuilder(builder.getInput(), builder.getStart()).build();
+    }
+
+  }
+
+}
@@ -1,8 +1,24 @@
 package net.lania.whitelist.service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+
 import com.mojang.brigadier.suggestion.Suggestions;
 import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 import com.velocitypowered.api.command.CommandSource;
@@ -13,171 +29,632 @@ import lombok.val;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.lania.whitelist.ConfigManager;
-import net.lania.whitelist.UuidUtils;
 import net.lania.whitelist.VelocityWhitelist;
-import net.lania.whitelist.storage.MySqlStorage;
+import net.lania.whitelist.cache.NegativeCache;
+import net.lania.whitelist.cache.WhitelistCache;
+import net.lania.whitelist.metrics.LatencyHistogram;
+import net.lania.whitelist.metrics.WhitelistMetrics;
+import net.lania.whitelist.storage.CircuitBreakerStorage;
+import net.lania.whitelist.storage.WhitelistEntry;
+import net.lania.whitelist.storage.WhitelistStorage;
 
 @RequiredArgsConstructor
 public class WhitelistService {
 
+  private static final int LIST_PAGE_SIZE = 20;
+
+  /**
+   * Position of a command source in a /vwl list search.
+   *
+   * @param search    The search string.
+   * @param fromCache Whether the pages were read from the cache.
+   * @param pageEnds  The last entry of every page read so far, in page order.
+   */
+  private record ListCursor(String search, boolean fromCache, List<WhitelistEntry> pageEnds) {
+  }
+
   private final VelocityWhitelist plugin;
 
+  private final Logger logger;
+
   private final ConfigManager config;
 
-  private final MySqlStorage storage;
+  private final WhitelistStorage storage;
+
+  private final WhitelistCache cache;
+
+  private final WhitelistMetrics metrics;
+
+  private final IdentityResolver identities;
+
+  private final NegativeCache negativeCache = new NegativeCache(0, 1);
+
+  // Where each command source stopped in /vwl list, dropped with the source
+  private final Map<CommandSource, ListCursor> listCursors = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private final SingleFlight<UUID, Integer> inFlightLookups = new SingleFlight<>();
+
+  private ExecutorService lookupExecutor;
+
+  private LookupBatcher lookupBatcher;
+
+  private SuggestionDispatcher suggestionDispatcher;
+
+  /**
+   * Starts the executor used for login lookups.
+   * The executor runs on virtual threads, but the number of lookups running at
+   * the same time and the number of lookups waiting for a slot are bounded by
+   * the login section of the configuration, so a join storm cannot queue an
+   * unlimited amount of database work.
+   */
+  public void init() {
+    val cacheCfg = config.getCache();
+    negativeCache.configure(cacheCfg.getNegativeTtl(), cacheCfg.getNegativeMaxSize());
+
+    val cfg = config.getLogin();
+    lookupExecutor = new ThreadPoolExecutor(
+        cfg.getMaxConcurrentLookups(),
+        cfg.getMaxConcurrentLookups(),
+        0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(cfg.getMaxQueuedLookups()),
+        Thread.ofVirtual().name("vwl-lookup-", 0).factory());
+
+    if (cfg.isBatchLookups()) {
+      lookupBatcher = new LookupBatcher(storage, lookupExecutor, cfg.getBatchWindow(), cfg.getMaxBatchSize());
+    }
+
+    val suggestionCfg = config.getSuggestions();
+    suggestionDispatcher = new SuggestionDispatcher(logger, suggestionCfg.getThreads(),
+        suggestionCfg.getMaxQueued(), suggestionCfg.getDebounce());
+  }
+
+  /**
+   * Stops the login lookup executor.
+   * Lookups that are still queued are dropped, running lookups are given a
+   * short grace period to finish.
+   */
+  public void shutdown() {
+    if (lookupBatcher != null) {
+      lookupBatcher.shutdown();
+    }
+
+    if (suggestionDispatcher != null) {
+      suggestionDispatcher.shutdown();
+    }
+
+    if (lookupExecutor == null) {
+      return;
+    }
+
+    lookupExecutor.shutdownNow();
+    try {
+      if (!lookupExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+        logger.warn("Whitelist lookups did not finish in time during shutdown");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 
   /**
-   * Checks if a player is whitelisted.
-   * This method queries the database to determine if the player is in the
-   * whitelist.
+   * Checks if a player is whitelisted without blocking the calling thread.
+   * Once the whitelist cache is loaded the answer comes from memory. Otherwise
+   * players denied within the negative cache TTL are denied again from memory,
+   * and the database lookup runs on the dedicated lookup executor. Concurrent
+   * checks for the same UUID share a single database lookup. If it does not
+   * finish within the configured timeout, or the executor is saturated, the
+   * configured timeout policy decides the result.
    *
    * @param player The Player to check.
-   * @return True if the player is whitelisted, false otherwise.
+   * @return A future completed with 1 if the player is whitelisted, 0 if not
+   *         and -1 if the whitelist could not be checked. The future never
+   *         completes exceptionally.
    */
-  public boolean isWhitelisted(Player player) {
+  public CompletableFuture<Integer> isWhitelistedAsync(Player player) {
+    val start = System.nanoTime();
     val uniqueId = player.getUniqueId();
-    val username = player.getUsername();
 
-    plugin.logDebug("Checking if {} (UUID: {}) is whitelisted", username, uniqueId);
+    plugin.logDebug("Checking if {} (UUID: {}) is whitelisted", player.getUsername(), uniqueId);
 
-    val result = storage.findEntryByUniqueId(uniqueId);
-    if (result == -1) {
-      player.sendMessage(config.getLocalizedMessages().get(config.getDefaultLocale()).getFailedToCheckWhitelist());
-      return false;
+    if (cache.isLoaded()) {
+      val result = cache.contains(uniqueId) ? 1 : 0;
+      metrics.recordLogin(start, result, true);
+      return CompletableFuture.completedFuture(result);
     }
 
-    if (result == 1) {
-      return true;
+    if (negativeCache.contains(uniqueId)) {
+      plugin.logDebug("{} was denied recently, skipping the database", uniqueId);
+      metrics.recordLogin(start, 0, true);
+      return CompletableFuture.completedFuture(0);
     }
 
-    return false;
+    val cfg = config.getLogin();
+    val timeoutResult = cfg.isAllowOnTimeout() ? 1 : -1;
+
+    // The shared future is copied so one caller's timeout does not complete it
+    // for everyone else waiting on the same lookup
+    return inFlightLookups.execute(uniqueId, this::lookupInStorage)
+        .copy()
+        .completeOnTimeout(timeoutResult, cfg.getLookupTimeout(), TimeUnit.MILLISECONDS)
+        .exceptionally(ex -> {
+          val cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+          if (cause instanceof RejectedExecutionException) {
+            logger.warn("Whitelist lookup for {} rejected, too many pending lookups", uniqueId);
+            return timeoutResult;
+          }
+          logger.error("Error while checking if {} is whitelisted", uniqueId, cause);
+          return -1;
+        })
+        .thenApply(result -> {
+          metrics.recordLogin(start, result, false);
+          return result;
+        });
+  }
+
+  /**
+   * Checks at pre-login whether a player name is known not to be whitelisted,
+   * so the connection can be refused before the authentication handshake.
+   * Only answers from memory and never reaches the database. When in doubt the
+   * player is let through to the check after login, which stays authoritative.
+   *
+   * @param username The name the player connects with.
+   * @return True if the player should be denied right away.
+   */
+  public boolean isDeniedBeforeLogin(String username) {
+    val denied = switch (config.getLogin().getPreLoginCheck()) {
+      case "offline" -> {
+        val uniqueId = identities.resolveOffline(username);
+        if (cache.isLoaded()) {
+          yield !cache.contains(uniqueId);
+        }
+        yield negativeCache.contains(uniqueId);
+      }
+      case "online" -> cache.hasUsernames() && !cache.containsUsername(username);
+      default -> false;
+    };
+
+    if (denied) {
+      plugin.logDebug("Denied {} at pre-login", username);
+      metrics.recordPreLoginDenied();
+    }
+    return denied;
+  }
+
+  /**
+   * Queues a database lookup for a UUID on the lookup executor, or in the
+   * current batch if lookup batching is enabled.
+   * UUIDs that are not whitelisted are remembered in the negative cache.
+   *
+   * @param uniqueId The UUID to look up.
+   * @return A future completed with the storage result, or failed with a
+   *         RejectedExecutionException if the executor is saturated.
+   */
+  private CompletableFuture<Integer> lookupInStorage(UUID uniqueId) {
+    if (lookupBatcher != null) {
+      return lookupBatcher.submit(uniqueId).thenApply(result -> {
+        if (result == 0) {
+          negativeCache.put(uniqueId);
+        }
+        return result;
+      });
+    }
+
+    try {
+      return CompletableFuture.supplyAsync(() -> {
+        val result = storage.findEntryByUniqueId(uniqueId);
+        if (result == 0) {
+          negativeCache.put(uniqueId);
+        }
+        return result;
+      }, lookupExecutor);
+    } catch (RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(e);
+    }
   }
 
   /**
    * Provides suggestions for whitelisted player names.
+   * Answered from the in-memory username index once the cache is loaded,
+   * otherwise from the database through the suggestion dispatcher, where a
+   * newer request from the same source supersedes the pending one.
    *
+   * @param source  The CommandSource asking for suggestions.
    * @param builder The SuggestionsBuilder to add suggestions to.
    * @return A CompletableFuture containing the suggestions.
    */
-  public CompletableFuture<Suggestions> getWhitelistedPlayerSuggestions(SuggestionsBuilder builder) {
-    return CompletableFuture.supplyAsync(() -> {
-      val remaining = builder.getRemaining().toLowerCase();
-      val suggestions = storage.findUsernameLikeString(remaining, 10);
-      suggestions.forEach(builder::suggest);
-      return builder.build();
+  public CompletableFuture<Suggestions> getWhitelistedPlayerSuggestions(CommandSource source,
+      SuggestionsBuilder builder) {
+    if (cache.hasUsernames()) {
+      val start = System.nanoTime();
+      cache.findUsernames(builder.getRemaining(), 10).forEach(builder::suggest);
+      metrics.getSuggestionLatency().recordSince(start);
+      return builder.buildFuture();
+    }
+
+    if (suggestionDispatcher == null) {
+      return builder.buildFuture();
+    }
+
+    return suggestionDispatcher.submit(source, builder, remaining -> {
+      val start = System.nanoTime();
+      val usernames = storage.findUsernameLikeString(remaining.toLowerCase(), 10);
+      metrics.getSuggestionLatency().recordSince(start);
+      return usernames;
     });
   }
 
   /**
-   * Adds a player to the whitelist.
-   * This method opens a connection to the database, executes the SQL query,
-   * and then closes the connection.
+   * Adds players to the whitelist.
+   * All UUIDs are resolved up front with a single query, then every player
+   * that is not whitelisted yet is inserted in one batched transaction. The
+   * outcome for every player is reported in a single summary message.
    *
-   * @param source   The CommandSource who executed the command.
-   * @param username The name of the player to add to the whitelist.
+   * @param source    The CommandSource who executed the command.
+   * @param usernames The names of the players to add to the whitelist.
    */
-  public void addWhitelist(CommandSource source, String username) {
-    plugin.logDebug("Adding {} to the whitelist", username);
+  public void addWhitelist(CommandSource source, List<String> usernames) {
+    plugin.logDebug("Adding {} to the whitelist", usernames);
+
+    plugin.getServer().getScheduler().buildTask(plugin, () -> {
+      val unknown = new ArrayList<String>();
+      val targets = resolveTargets(usernames, unknown);
+      val existing = targets == null ? null : storage.findEntriesByUniqueIdsForAdmin(targets.keySet());
+      if (existing == null) {
+        source.sendMessage(Component.text("Failed to add " + String.join(", ", usernames)
+            + " to the whitelist.", NamedTextColor.RED));
+        return;
+      }
 
-    val uniqueId = UuidUtils.generateUniqueId(username);
+      val toInsert = new ArrayList<WhitelistEntry>();
+      val alreadyWhitelisted = new ArrayList<String>();
+      targets.forEach((uniqueId, username) -> {
+        if (existing.contains(uniqueId)) {
+          alreadyWhitelisted.add(username);
+        } else {
+          toInsert.add(new WhitelistEntry(uniqueId, username));
+        }
+      });
+
+      val added = new ArrayList<String>();
+      val failed = new ArrayList<String>();
+      if (storage.insertWhitelistBatch(toInsert)) {
+        cache.addAll(toInsert);
+        toInsert.forEach(entry -> {
+          negativeCache.invalidate(entry.uniqueId());
+          added.add(entry.username());
+        });
+      } else {
+        toInsert.forEach(entry -> failed.add(entry.username()));
+      }
 
-    val result = storage.findEntryByUniqueId(uniqueId);
-    if (result == -1) {
-      source.sendMessage(Component.text("Failed to add " + username + " to the whitelist.", NamedTextColor.RED));
-      return;
-    }
+      var summary = Component.empty();
+      summary = appendGroup(summary, added, "Now whitelisted", NamedTextColor.GREEN);
+      summary = appendGroup(summary, alreadyWhitelisted, "Already whitelisted", NamedTextColor.YELLOW);
+      summary = appendGroup(summary, failed, "Failed to add", NamedTextColor.RED);
+      summary = appendGroup(summary, unknown, "Unknown player", NamedTextColor.RED);
+      source.sendMessage(summary);
+    }).schedule();
+  }
 
-    if (result == 1) {
-      source.sendMessage(Component.text(username + " is already whitelisted.", NamedTextColor.RED));
-      return;
+  /**
+   * Forgets players whitelisted without going through this service, e.g. by an
+   * import, so the negative cache does not keep denying them until it expires.
+   *
+   * @param added The entries just written to the storage.
+   */
+  public void invalidateDenied(List<WhitelistEntry> added) {
+    added.forEach(entry -> negativeCache.invalidate(entry.uniqueId()));
+  }
+
+  /**
+   * Deletes players from the whitelist.
+   * All UUIDs are resolved up front with a single query, then every player
+   * that is whitelisted is deleted with one statement in one transaction. The
+   * outcome for every player is reported in a single summary message.
+   *
+   * @param source    The CommandSource who executed the command.
+   * @param usernames The names of the players to delete from the whitelist.
+   */
+  public void delWhitelist(CommandSource source, List<String> usernames) {
+    plugin.logDebug("Removing {} from the whitelist", usernames);
+
+    plugin.getServer().getScheduler().buildTask(plugin, () -> {
+      val unknown = new ArrayList<String>();
+      val targets = resolveTargets(usernames, unknown);
+      val existing = targets == null ? null : storage.findEntriesByUniqueIdsForAdmin(targets.keySet());
+      if (existing == null) {
+        source.sendMessage(Component.text("Failed to remove " + String.join(", ", usernames)
+            + " from the whitelist.", NamedTextColor.RED));
+        return;
+      }
+
+      val toDelete = new ArrayList<UUID>();
+      val removed = new ArrayList<String>();
+      val notWhitelisted = new ArrayList<String>();
+      targets.forEach((uniqueId, username) -> {
+        if (existing.contains(uniqueId)) {
+          toDelete.add(uniqueId);
+          removed.add(username);
+        } else {
+          notWhitelisted.add(username);
+        }
+      });
+
+      val failed = new ArrayList<String>();
+      if (storage.deleteWhitelistBatch(toDelete)) {
+        cache.removeAll(toDelete);
+      } else {
+        failed.addAll(removed);
+        removed.clear();
+      }
+
+      var summary = Component.empty();
+      summary = appendGroup(summary, removed, "No longer whitelisted", NamedTextColor.AQUA);
+      summary = appendGroup(summary, notWhitelisted, "Not whitelisted", NamedTextColor.YELLOW);
+      summary = appendGroup(summary, failed, "Failed to remove", NamedTextColor.RED);
+      summary = appendGroup(summary, unknown, "Unknown player", NamedTextColor.RED);
+      source.sendMessage(summary);
+    }).schedule();
+  }
+
+  /**
+   * Maps command targets to their UUIDs, dropping duplicates.
+   *
+   * @param usernames The player names given to the command.
+   * @param unknown   Receives the names that do not belong to any player.
+   * @return The UUID of every distinct name, in the order they were given, or
+   *         null if the names could not be resolved.
+   */
+  private Map<UUID, String> resolveTargets(List<String> usernames, List<String> unknown) {
+    val resolved = identities.resolveAll(usernames);
+    if (resolved == null) {
+      return null;
     }
 
-    if (storage.insertWhitelist(uniqueId, username)) {
-      source.sendMessage(Component.text(username + " is now whitelisted.", NamedTextColor.GREEN));
+    val targets = new LinkedHashMap<UUID, String>();
+    for (val username : usernames) {
+      val uniqueId = resolved.get(username);
+      if (uniqueId != null) {
+        targets.putIfAbsent(uniqueId, username);
+      } else if (!unknown.contains(username)) {
+        unknown.add(username);
+      }
     }
+    return targets;
   }
 
   /**
-   * Deletes a player from the whitelist.
-   * This method opens a connection to the database, executes the SQL query,
-   * and then closes the connection.
+   * Appends a group of player names to a command summary message.
+   * Groups without players are left out.
    *
-   * @param source   The CommandSource who executed the command.
-   * @param username The name of the player to delete from the whitelist.
+   * @param message The summary built so far.
+   * @param names   The player names of the group.
+   * @param label   The label shown in front of the names.
+   * @param color   The color of the label.
+   * @return The summary with the group appended.
    */
-  public void delWhitelist(CommandSource source, String username) {
-    plugin.logDebug("Removing {} from the whitelist", username);
+  private Component appendGroup(Component message, List<String> names, String label, NamedTextColor color) {
+    if (names.isEmpty()) {
+      return message;
+    }
 
-    val uniqueId = UuidUtils.generateUniqueId(username);
+    val separator = message.children().isEmpty() ? "" : " | ";
+    return message
+        .append(Component.text(separator + label + ": ", color))
+        .append(Component.text(String.join(", ", names), NamedTextColor.WHITE));
+  }
 
-    val result = storage.findEntryByUniqueId(uniqueId);
-    if (result == -1) {
-      source.sendMessage(Component.text("Failed to remove " + username + " from the whitelist.", NamedTextColor.RED));
-      return;
+  /**
+   * Converts the whitelist table to BINARY(16) UUIDs in the background.
+   * The migration is resumable, running it again after an interruption picks
+   * up where it stopped.
+   *
+   * @param source The CommandSource who executed the command, receives progress
+   *               messages.
+   */
+  public void migrateUuids(CommandSource source) {
+    plugin.logDebug("Migrating the whitelist table to binary UUIDs");
+
+    source.sendMessage(Component.text("Migrating the whitelist table to binary UUIDs...", NamedTextColor.AQUA));
+    plugin.getServer().getScheduler().buildTask(plugin, () -> {
+      val chunkSize = config.getDatabase().getMigrationChunkSize();
+      val success = storage.migrateToBinaryUuids(chunkSize,
+          progress -> source.sendMessage(Component.text(progress, NamedTextColor.GRAY)));
+
+      if (success) {
+        source.sendMessage(Component.text("Migration to binary UUIDs complete.", NamedTextColor.GREEN));
+      } else {
+        source.sendMessage(Component.text(
+            "Migration to binary UUIDs failed. Check the console for details.", NamedTextColor.RED));
+      }
+    }).schedule();
+  }
+
+  /**
+   * Reports the health of the whitelist: whether it is enforced, the state of
+   * the storage circuit breaker and what the cache holds.
+   *
+   * @param source The CommandSource who executed the command.
+   */
+  public void sendStatus(CommandSource source) {
+    source.sendMessage(Component.text("Whitelist: ", NamedTextColor.GRAY)
+        .append(config.isPluginEnabled()
+            ? Component.text("enabled", NamedTextColor.GREEN)
+            : Component.text("disabled", NamedTextColor.RED)));
+
+    var storageLine = Component.text("Storage: ", NamedTextColor.GRAY)
+        .append(Component.text(config.getStorage().getType(), NamedTextColor.WHITE));
+    if (storage instanceof CircuitBreakerStorage breaker) {
+      val state = breaker.getState();
+      val color = switch (state) {
+        case CLOSED -> NamedTextColor.GREEN;
+        case HALF_OPEN -> NamedTextColor.YELLOW;
+        case OPEN -> NamedTextColor.RED;
+      };
+      var details = breaker.getConsecutiveFailures() + " failures in a row, " + breaker.getTrips() + " trips";
+      if (state == CircuitBreakerStorage.State.OPEN) {
+        details += ", probing in " + (breaker.getRemainingOpenMillis() / 1000) + "s";
+      }
+      storageLine = storageLine
+          .append(Component.text(" | Circuit breaker: ", NamedTextColor.GRAY))
+          .append(Component.text(state.name(), color))
+          .append(Component.text(" (" + details + ")", NamedTextColor.WHITE));
+    }
+    source.sendMessage(storageLine);
+
+    final Component cacheState;
+    if (!config.getCache().isEnabled()) {
+      cacheState = Component.text("disabled", NamedTextColor.GRAY);
+    } else if (!cache.isLoaded()) {
+      cacheState = Component.text("not loaded", NamedTextColor.RED);
+    } else {
+      cacheState = Component.text(cache.size() + " entries" + (cache.isFromSnapshot() ? " (from snapshot)" : ""),
+          cache.isFromSnapshot() ? NamedTextColor.YELLOW : NamedTextColor.GREEN);
     }
+    source.sendMessage(Component.text("Cache: ", NamedTextColor.GRAY).append(cacheState));
+  }
 
-    if (result == 1) {
-      source.sendMessage(Component.text(username + " is not whitelisted.", NamedTextColor.RED));
-      return;
+  /**
+   * Reports the login check counters and latencies, the suggestion latencies
+   * and the state of the database pool.
+   *
+   * @param source The CommandSource who executed the command.
+   */
+  public void sendStats(CommandSource source) {
+    val total = metrics.getAllowed() + metrics.getDenied() + metrics.getErrors();
+    val hitRatio = total == 0 ? 0 : metrics.getCacheHits() * 100 / total;
+    source.sendMessage(Component.text("Logins: ", NamedTextColor.GRAY)
+        .append(Component.text(total + " (allowed " + metrics.getAllowed() + ", denied " + metrics.getDenied()
+            + ", errors " + metrics.getErrors() + ") | answered from memory: " + hitRatio + "%"
+            + " | denied at pre-login: " + metrics.getPreLoginDenied()
+            + " | rate limited: " + metrics.getRateLimited(),
+            NamedTextColor.WHITE)));
+    source.sendMessage(Component.text("Login latency: ", NamedTextColor.GRAY)
+        .append(Component.text(formatLatency(metrics.getLoginLatency()), NamedTextColor.WHITE)));
+    source.sendMessage(Component.text("Suggestion latency: ", NamedTextColor.GRAY)
+        .append(Component.text(formatLatency(metrics.getSuggestionLatency()), NamedTextColor.WHITE)));
+
+    val pool = metrics.getPoolStats();
+    if (pool != null) {
+      source.sendMessage(Component.text("Pool: ", NamedTextColor.GRAY)
+          .append(Component.text("active " + pool.active() + ", idle " + pool.idle() + ", total " + pool.total()
+              + "/" + pool.maximum() + ", waiting " + pool.waiting() + ", shed " + pool.shed(),
+              pool.waiting() > 0 ? NamedTextColor.YELLOW : NamedTextColor.WHITE)));
     }
+  }
 
-    if (storage.deleteWhitelist(uniqueId)) {
-      source.sendMessage(Component.text(username + " is no longer whitelisted.", NamedTextColor.AQUA));
+  /**
+   * Clears the metrics shown by /vwl stats.
+   *
+   * @param source The CommandSource who executed the command.
+   */
+  public void resetStats(CommandSource source) {
+    metrics.reset();
+    source.sendMessage(Component.text("Statistics reset.", NamedTextColor.GREEN));
+  }
+
+  /**
+   * Formats the count and percentiles of a latency histogram.
+   */
+  private String formatLatency(LatencyHistogram histogram) {
+    if (histogram.getCount() == 0) {
+      return "no samples";
     }
+    return String.format(Locale.ROOT, "%d samples, p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms",
+        histogram.getCount(),
+        histogram.getValueAtQuantile(0.5) / 1000.0,
+        histogram.getValueAtQuantile(0.99) / 1000.0,
+        histogram.getValueAtQuantile(0.999) / 1000.0,
+        histogram.getMaxMicros() / 1000.0);
   }
 
   /**
-   * Lists all whitelisted players that match a case-insensitive search.
-   * The search string must be at least 2 characters long.
+   * Lists one page of the whitelisted players whose name starts with a
+   * case-insensitive search. The search string must be at least 2 characters
+   * long.
+   * Pages are read with keyset pagination: the last entry of every page shown
+   * to a command source is remembered, and the next page continues right after
+   * it, from the in-memory username index when the cache holds it and from the
+   * indexed lower-case username column otherwise. Browsing costs one short
+   * query per page, and players added or removed in between do not shift the
+   * pages the way an offset would. A page can only be shown once the page
+   * before it was, so a single command never walks a long run of pages.
    *
    * @param source The CommandSource who executed the command.
    * @param search The search string to match against player names.
+   * @param page   The page to show, starting at 1.
    */
-  public void listWhitelist(CommandSource source, String search) {
-    plugin.logDebug("Listing whitelisted players matching: {}", search);
+  public void listWhitelist(CommandSource source, String search, int page) {
+    plugin.logDebug("Listing page {} of whitelisted players matching: {}", page, search);
 
-    // Preliminary check to make sure the search string is at least 2 characters
-    // long
     if (search.length() < 2) {
       source.sendMessage(Component.text("Search string must be at least 2 characters long.", NamedTextColor.RED));
       return;
     }
+    if (page < 1) {
+      source.sendMessage(Component.text("Page must be at least 1.", NamedTextColor.RED));
+      return;
+    }
 
-    // Sanitize the search string to prevent SQL injection
-    val sanitizedSearch = search.replaceAll("[^a-zA-Z0-9]", "");
-    var isValid = true;
+    // Cursors of the cache and of the storage are not interchangeable
+    val fromCache = cache.hasUsernames();
+    var cursor = listCursors.get(source);
+    if (cursor == null || cursor.fromCache() != fromCache || !cursor.search().equalsIgnoreCase(search)) {
+      cursor = new ListCursor(search, fromCache, List.of());
+    }
 
-    // Check if the sanitized string is still valid
-    if (sanitizedSearch != search) {
-      var outMsg = "Invalid characters in search string.";
+    val reachable = cursor.pageEnds().size() + 1;
+    if (page > reachable) {
+      source.sendMessage(Component.text("Page " + page + " cannot be reached yet, continue from /vwl list "
+          + search + " " + reachable + ".", NamedTextColor.RED));
+      return;
+    }
 
-      if (sanitizedSearch.length() < 2) {
-        outMsg += " Not enough usable characters.";
-        isValid = false;
+    // The ends of the pages read again are dropped, the whitelist may have changed
+    val pageEnds = new ArrayList<>(cursor.pageEnds().subList(0, page - 1));
+    val after = page == 1 ? null : pageEnds.get(page - 2);
+    Runnable listPage = () -> {
+      // One extra entry tells whether there is a page after this one
+      var entries = fromCache
+          ? cache.findUsernamePage(search, after, LIST_PAGE_SIZE + 1)
+          : storage.findUsernamePage(search, after, LIST_PAGE_SIZE + 1);
+      if (entries == null) {
+        source.sendMessage(Component.text("Could not list the whitelist. Check the console for details.",
+            NamedTextColor.RED));
+        return;
       }
-      if (sanitizedSearch.isEmpty()) {
-        outMsg += " No usable characters found.";
-        isValid = false;
+
+      val hasMore = entries.size() > LIST_PAGE_SIZE;
+      if (hasMore) {
+        entries = entries.subList(0, LIST_PAGE_SIZE);
+        pageEnds.add(entries.get(LIST_PAGE_SIZE - 1));
       }
+      listCursors.put(source, new ListCursor(search, fromCache, List.copyOf(pageEnds)));
 
-      source.sendMessage(Component.text(outMsg, NamedTextColor.RED));
-      // Exit if the search string is invalid
-      if (!isValid) {
+      if (entries.isEmpty()) {
+        source.sendMessage(Component.text(page == 1
+            ? "No whitelisted players found matching '" + search + "'."
+            : "There is no page " + page + " of players matching '" + search + "'.", NamedTextColor.RED));
         return;
       }
-    }
-
-    val matching = storage.findUsernameLikeString(sanitizedSearch, 20);
 
-    if (matching.isEmpty()) {
-      source.sendMessage(Component.text("No whitelisted players found matching '" + search + "'.",
-          NamedTextColor.RED));
-      return;
+      val playerList = entries.stream().map(WhitelistEntry::username).collect(Collectors.joining(", "));
+      var message = Component.text("Whitelisted Players matching '" + search + "' (page " + page + "):",
+          NamedTextColor.GREEN)
+          .append(Component.text(" " + playerList, NamedTextColor.WHITE));
+      if (hasMore) {
+        message = message.append(Component.newline())
+            .append(Component.text("Next page: /vwl list " + search + " " + (page + 1), NamedTextColor.GRAY));
+      }
+      source.sendMessage(message);
+    };
+
+    // The cache answers from memory, the storage may wait for a database connection
+    if (fromCache) {
+      listPage.run();
+    } else {
+      plugin.getServer().getScheduler().buildTask(plugin, listPage).schedule();
     }
-
-    val playerList = matching.stream().collect(Collectors.joining(", "));
-    source.sendMessage(Component.text("Whitelisted Players matching '" + search + "':", NamedTextColor.GREEN)
-        .append(Component.text(" " + playerList, NamedTextColor.WHITE)));
   }
 
 }
@@ -0,0 +1,413 @@
+package net.lania.whitelist.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.velocitypowered.api.command.CommandSource;
+
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.lania.whitelist.ConfigManager;
+import net.lania.whitelist.VelocityWhitelist;
+import net.lania.whitelist.cache.WhitelistCache;
+import net.lania.whitelist.storage.WhitelistEntry;
+import net.lania.whitelist.storage.WhitelistStorage;
+
+/**
+ * Imports and exports the whitelist from and to files in the plugin data
+ * directory.
+ * Files ending in .json use the vanilla whitelist.json format, any other file
+ * is read and written as CSV with one "uuid,name" line per player. Both
+ * directions stream the data, so memory use does not depend on the size of
+ * the whitelist.
+ */
+@RequiredArgsConstructor
+public class WhitelistTransferService {
+
+  private final VelocityWhitelist plugin;
+
+  private final Logger logger;
+
+  private final ConfigManager config;
+
+  private final WhitelistStorage storage;
+
+  private final WhitelistCache cache;
+
+  private final IdentityResolver identities;
+
+  private final WhitelistService whitelistService;
+
+  /**
+   * Imports a whitelist file in the background.
+   * Entries are written in batches of the configured size, each in its own
+   * transaction. CSV lines holding only a name are resolved to a UUID with the
+   * configured identity mode, a batch at a time, like /vwl add does.
+   *
+   * @param source   The CommandSource who executed the command, receives
+   *                 progress messages.
+   * @param fileName The name of the file, relative to the plugin data directory.
+   */
+  public void importWhitelist(CommandSource source, String fileName) {
+    plugin.logDebug("Importing the whitelist from {}", fileName);
+
+    val path = resolve(source, fileName);
+    if (path == null) {
+      return;
+    }
+    if (!Files.isRegularFile(path)) {
+      source.sendMessage(Component.text("File " + fileName + " does not exist.", NamedTextColor.RED));
+      return;
+    }
+
+    source.sendMessage(Component.text("Importing the whitelist from " + fileName + "...", NamedTextColor.AQUA));
+    plugin.getServer().getScheduler().buildTask(plugin, () -> {
+      val cfg = config.getTransfer();
+      val writer = new BatchWriter(source, cfg.getBatchSize(), cfg.getProgressInterval());
+
+      try {
+        if (isJson(fileName)) {
+          readJson(path, writer);
+        } else {
+          readCsv(path, writer);
+        }
+        writer.flush();
+      } catch (IOException | IllegalStateException e) {
+        logger.error("Error while reading whitelist file {}", fileName, e);
+        writer.failed = true;
+      }
+
+      // Bring the cache in line with the imported rows in one go
+      cache.refresh();
+
+      if (writer.failed) {
+        source.sendMessage(Component.text("Import stopped after " + writer.written
+            + " players. Check the console for details.", NamedTextColor.RED));
+      } else {
+        source.sendMessage(Component.text("Imported " + writer.written + " players"
+            + (writer.skipped > 0 ? ", skipped " + writer.skipped + " invalid lines." : "."),
+            NamedTextColor.GREEN));
+      }
+    }).schedule();
+  }
+
+  /**
+   * Exports the whitelist to a file in the background.
+   * The file is written to a temporary file first and moved into place once
+   * complete, so an existing export is never left half-written.
+   *
+   * @param source   The CommandSource who executed the command, receives
+   *                 progress messages.
+   * @param fileName The name of the file, relative to the plugin data directory.
+   */
+  public void exportWhitelist(CommandSource source, String fileName) {
+    plugin.logDebug("Exporting the whitelist to {}", fileName);
+
+    val path = resolve(source, fileName);
+    if (path == null) {
+      return;
+    }
+    if (isPluginFile(path)) {
+      source.sendMessage(Component.text("Refusing to overwrite a file used by the plugin.", NamedTextColor.RED));
+      return;
+    }
+
+    source.sendMessage(Component.text("Exporting the whitelist to " + fileName + "...", NamedTextColor.AQUA));
+    plugin.getServer().getScheduler().buildTask(plugin, () -> {
+      val cfg = config.getTransfer();
+      val json = isJson(fileName);
+      final long[] written = { 0 };
+
+      try {
+        Files.createDirectories(path.getParent());
+        val temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        var success = false;
+
+        try (val out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+          final Consumer<WhitelistEntry> progress = entry -> {
+            written[0]++;
+            if (written[0] % cfg.getProgressInterval() == 0) {
+              source.sendMessage(Component.text("Exported " + written[0] + " players", NamedTextColor.GRAY));
+            }
+          };
+
+          if (json) {
+            success = writeJson(out, progress, cfg.getBatchSize());
+          } else {
+            success = writeCsv(out, progress, cfg.getBatchSize());
+          }
+        } finally {
+          if (!success) {
+            Files.deleteIfExists(temp);
+          }
+        }
+
+        if (!success) {
+          source.sendMessage(Component.text("Export failed. Check the console for details.", NamedTextColor.RED));
+          return;
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        source.sendMessage(Component.text("Exported " + written[0] + " players to " + fileName + ".",
+            NamedTextColor.GREEN));
+      } catch (IOException | UncheckedIOException e) {
+        logger.error("Error while writing whitelist file {}", fileName, e);
+        source.sendMessage(Component.text("Export failed. Check the console for details.", NamedTextColor.RED));
+      }
+    }).schedule();
+  }
+
+  /**
+   * Resolves a file name inside the plugin data directory.
+   * Names pointing outside of the data directory are rejected.
+   *
+   * @return The resolved path, or null if the name is not allowed.
+   */
+  private Path resolve(CommandSource source, String fileName) {
+    val dataDirectory = plugin.getDataDirectory().toAbsolutePath().normalize();
+    val path = dataDirectory.resolve(fileName).normalize();
+    if (!path.startsWith(dataDirectory) || path.equals(dataDirectory)) {
+      source.sendMessage(Component.text("The file must be inside the plugin folder.", NamedTextColor.RED));
+      return null;
+    }
+    return path;
+  }
+
+  /**
+   * Checks whether a path is a file the plugin reads or writes itself: the
+   * configuration, the local storage log, the cache snapshot, the metrics file
+   * or one of their temporary files. Overwriting the storage log with an
+   * export would empty the whitelist on the next start.
+   */
+  private boolean isPluginFile(Path path) {
+    val name = path.getFileName().toString();
+    if (name.toLowerCase(Locale.ROOT).endsWith(".tmp")) {
+      return true;
+    }
+
+    val dataDirectory = plugin.getDataDirectory().toAbsolutePath().normalize();
+    val owned = List.of("config.yml", config.getStorage().getLocalFile(), config.getCache().getSnapshotFile(),
+        config.getMetrics().getExportFile());
+    for (val file : owned) {
+      if (file != null && !file.isEmpty()
+          && dataDirectory.resolve(file).normalize().toString().equalsIgnoreCase(path.toString())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isJson(String fileName) {
+    return fileName.toLowerCase(Locale.ROOT).endsWith(".json");
+  }
+
+  /**
+   * Reads a CSV file with "uuid,name" or "name" lines.
+   * Empty lines, comment lines starting with # and a "uuid,name" header are
+   * ignored.
+   */
+  private void readCsv(Path path, BatchWriter writer) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null && !writer.failed) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#") || line.equalsIgnoreCase("uuid,name")) {
+          continue;
+        }
+
+        val separator = line.indexOf(',');
+        if (separator < 0) {
+          writer.accept(null, line);
+        } else {
+          writer.accept(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a vanilla whitelist.json file, an array of objects with "uuid" and
+   * "name" fields.
+   */
+  private void readJson(Path path, BatchWriter writer) throws IOException {
+    try (val reader = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+      reader.beginArray();
+      while (reader.hasNext() && !writer.failed) {
+        String uniqueId = null;
+        String name = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+          switch (reader.nextName()) {
+            case "uuid" -> uniqueId = reader.nextString();
+            case "name" -> name = reader.nextString();
+            default -> reader.skipValue();
+          }
+        }
+        reader.endObject();
+
+        writer.accept(uniqueId, name);
+      }
+    }
+  }
+
+  /**
+   * Writes the whitelist as CSV with a "uuid,name" header.
+   */
+  private boolean writeCsv(BufferedWriter out, Consumer<WhitelistEntry> progress, int fetchSize)
+      throws IOException {
+    out.write("uuid,name");
+    out.newLine();
+    return storage.streamAllEntries(fetchSize, entry -> {
+      try {
+        out.write(entry.uniqueId() + "," + entry.username());
+        out.newLine();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      progress.accept(entry);
+    });
+  }
+
+  /**
+   * Writes the whitelist in the vanilla whitelist.json format.
+   */
+  private boolean writeJson(BufferedWriter out, Consumer<WhitelistEntry> progress, int fetchSize)
+      throws IOException {
+    val writer = new JsonWriter(out);
+    writer.setIndent("  ");
+    writer.beginArray();
+    val success = storage.streamAllEntries(fetchSize, entry -> {
+      try {
+        writer.beginObject();
+        writer.name("uuid").value(entry.uniqueId().toString());
+        writer.name("name").value(entry.username());
+        writer.endObject();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      progress.accept(entry);
+    });
+    writer.endArray();
+    writer.flush();
+    return success;
+  }
+
+  /**
+   * Collects imported entries and writes them in batches.
+   */
+  private final class BatchWriter {
+
+    private final CommandSource source;
+    private final int batchSize;
+    private final int progressInterval;
+    private final List<WhitelistEntry> batch;
+    // Names read without a UUID, resolved together when the batch is written
+    private final List<String> unresolved;
+
+    private long written;
+    private long skipped;
+    private boolean failed;
+
+    private BatchWriter(CommandSource source, int batchSize, int progressInterval) {
+      this.source = source;
+      this.batchSize = batchSize;
+      this.progressInterval = progressInterval;
+      this.batch = new ArrayList<>(batchSize);
+      this.unresolved = new ArrayList<>();
+    }
+
+    /**
+     * Queues one imported player, writing the batch once it is full.
+     *
+     * @param rawUniqueId The UUID as read from the file, or null to resolve the
+     *                    name with the configured identity mode.
+     * @param name        The username as read from the file.
+     */
+    private void accept(String rawUniqueId, String name) {
+      if (name == null || name.isEmpty()) {
+        skipped++;
+        return;
+      }
+
+      if (rawUniqueId == null || rawUniqueId.isEmpty()) {
+        unresolved.add(name);
+      } else {
+        try {
+          batch.add(new WhitelistEntry(UUID.fromString(rawUniqueId), name));
+        } catch (IllegalArgumentException e) {
+          skipped++;
+          return;
+        }
+      }
+
+      if (batch.size() + unresolved.size() >= batchSize) {
+        flush();
+      }
+    }
+
+    /**
+     * Writes the queued entries in one transaction.
+     */
+    private void flush() {
+      if (failed) {
+        return;
+      }
+
+      if (!unresolved.isEmpty()) {
+        val resolved = identities.resolveAll(unresolved);
+        if (resolved == null) {
+          logger.error("Could not resolve the UUIDs of {} imported names", unresolved.size());
+          failed = true;
+          return;
+        }
+        for (val name : unresolved) {
+          val uniqueId = resolved.get(name);
+          if (uniqueId == null) {
+            skipped++;
+          } else {
+            batch.add(new WhitelistEntry(uniqueId, name));
+          }
+        }
+        unresolved.clear();
+      }
+
+      if (batch.isEmpty()) {
+        return;
+      }
+
+      if (!storage.insertWhitelistBatch(batch)) {
+        failed = true;
+        return;
+      }
+      whitelistService.invalidateDenied(batch);
+
+      val before = written;
+      written += batch.size();
+      batch.clear();
+
+      if (written / progressInterval != before / progressInterval) {
+        source.sendMessage(Component.text("Imported " + written + " players", NamedTextColor.GRAY));
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,12 @@
+package net.lania.whitelist.storage;
+
+/**
+ * Range of versions currently held by the whitelist change log.
+ * Older rows are pruned, a reader whose last seen version is below the oldest
+ * retained one may have missed changes and has to reload the whole whitelist.
+ *
+ * @param oldestVersion The oldest retained version, 0 if the log is empty.
+ * @param latestVersion The newest version, 0 if the log is empty.
+ */
+public record ChangeLogBounds(long oldestVersion, long latestVersion) {
+}
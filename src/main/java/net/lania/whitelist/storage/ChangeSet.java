@@ -0,0 +1,13 @@
+package net.lania.whitelist.storage;
+
+import java.util.List;
+
+/**
+ * Rows of the whitelist table that changed since a given change marker.
+ *
+ * @param entries The changed rows, ordered by their change marker.
+ * @param marker  The highest change marker seen, to be passed to the next
+ *                incremental fetch. Null if the table is empty.
+ */
+public record ChangeSet(List<WhitelistEntry> entries, Object marker) {
+}
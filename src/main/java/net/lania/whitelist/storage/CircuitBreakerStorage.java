@@ -0,0 +1,363 @@
+package net.lania.whitelist.storage;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import lombok.val;
+import net.lania.whitelist.VelocityWhitelist;
+import net.lania.whitelist.config.BreakerConfig;
+
+/**
+ * Storage decorator that stops calling a failing backend for a while.
+ * After a number of failed or slow calls in a row the breaker opens and calls
+ * are answered right away without reaching the backend: lookups from the
+ * results the backend gave most recently, or from the configured policy when
+ * the player is unknown. Once the open duration has passed a single call
+ * probes the backend (half-open). If it succeeds the breaker closes, otherwise
+ * it opens again.
+ */
+public class CircuitBreakerStorage implements WhitelistStorage {
+
+  /**
+   * State of the breaker.
+   */
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final VelocityWhitelist plugin;
+  private final Logger logger;
+  private final WhitelistStorage delegate;
+  private final BreakerConfig cfg;
+
+  // Last result of the backend for recently looked up or changed UUIDs
+  private final Map<UUID, Boolean> lastKnown;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private long trips;
+
+  public CircuitBreakerStorage(VelocityWhitelist plugin, Logger logger, WhitelistStorage delegate,
+      BreakerConfig cfg) {
+    this.plugin = plugin;
+    this.logger = logger;
+    this.delegate = delegate;
+    this.cfg = cfg;
+
+    val maxSize = cfg.getLastKnownSize();
+    this.lastKnown = Collections.synchronizedMap(new LinkedHashMap<UUID, Boolean>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+        return size() > maxSize;
+      }
+    });
+  }
+
+  /**
+   * Gets the current state of the breaker.
+   *
+   * @return The state.
+   */
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * Gets the number of failed or slow calls in a row.
+   *
+   * @return The number of consecutive failures.
+   */
+  public synchronized int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  /**
+   * Gets the number of times the breaker opened since startup.
+   *
+   * @return The number of trips.
+   */
+  public synchronized long getTrips() {
+    return trips;
+  }
+
+  /**
+   * Gets the time left before the open breaker lets a probe through.
+   *
+   * @return The remaining time in milliseconds, 0 if the breaker is not open.
+   */
+  public synchronized long getRemainingOpenMillis() {
+    if (state != State.OPEN) {
+      return 0;
+    }
+    val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt);
+    return Math.max(0, cfg.getOpenDuration() - elapsed);
+  }
+
+  /**
+   * Decides whether a call may reach the backend.
+   * An open breaker turns half-open once the open duration has passed and lets
+   * the calling thread through as the only probe.
+   */
+  private synchronized boolean tryAcquire() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt) < cfg.getOpenDuration()) {
+          return false;
+        }
+        state = State.HALF_OPEN;
+        plugin.logDebug("Storage circuit breaker half-open, probing the backend");
+        return true;
+      default:
+        // A probe is already running
+        return false;
+    }
+  }
+
+  private synchronized void onSuccess() {
+    // Calls started before the breaker opened do not close it
+    if (state == State.OPEN) {
+      return;
+    }
+    if (state == State.HALF_OPEN) {
+      logger.info("Storage circuit breaker closed, the backend is reachable again");
+    }
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+  }
+
+  private synchronized void onFailure(String reason) {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN
+        || (state == State.CLOSED && consecutiveFailures >= cfg.getFailureThreshold())) {
+      state = State.OPEN;
+      openedAt = System.nanoTime();
+      trips++;
+      logger.warn("Storage circuit breaker opened after {} {} calls, skipping the backend for {} ms",
+          consecutiveFailures, reason, cfg.getOpenDuration());
+    }
+  }
+
+  /**
+   * Runs a backend call through the breaker.
+   *
+   * @param action   The backend call.
+   * @param failed   Tells whether a result reports an error.
+   * @param whenOpen Supplies the result while the breaker rejects calls.
+   * @param timed    Whether slow calls count as failures.
+   * @return The result of the call, or of whenOpen if the call was rejected.
+   */
+  private <T> T call(Supplier<T> action, Predicate<T> failed, Supplier<T> whenOpen, boolean timed) {
+    if (!tryAcquire()) {
+      return whenOpen.get();
+    }
+
+    val start = System.nanoTime();
+    final T result;
+    try {
+      result = action.get();
+    } catch (RuntimeException e) {
+      onFailure("failed");
+      throw e;
+    }
+
+    val elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    if (failed.test(result)) {
+      onFailure("failed");
+    } else if (timed && cfg.getSlowCallThreshold() > 0 && elapsed > cfg.getSlowCallThreshold()) {
+      onFailure("slow");
+    } else {
+      onSuccess();
+    }
+    return result;
+  }
+
+  private void remember(UUID uniqueId, boolean whitelisted) {
+    if (cfg.getLastKnownSize() > 0) {
+      lastKnown.put(uniqueId, whitelisted);
+    }
+  }
+
+  /**
+   * Answers a lookup while the breaker is open.
+   *
+   * @return The last known result, or the open policy if the UUID is unknown.
+   */
+  private int fallback(UUID uniqueId) {
+    val known = lastKnown.get(uniqueId);
+    if (known != null) {
+      return known ? 1 : 0;
+    }
+    return cfg.isAllowWhenOpen() ? 1 : -1;
+  }
+
+  @Override
+  public boolean init() {
+    return delegate.init();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public int findEntryByUniqueId(@NotNull UUID uniqueId) {
+    return call(() -> {
+      val result = delegate.findEntryByUniqueId(uniqueId);
+      if (result >= 0) {
+        remember(uniqueId, result == 1);
+      }
+      return result;
+    }, result -> result < 0, () -> fallback(uniqueId), true);
+  }
+
+  @Override
+  public Set<UUID> findEntriesByUniqueIds(@NotNull Collection<UUID> uniqueIds) {
+    return call(() -> {
+      val found = delegate.findEntriesByUniqueIds(uniqueIds);
+      if (found != null) {
+        uniqueIds.forEach(uniqueId -> remember(uniqueId, found.contains(uniqueId)));
+      }
+      return found;
+    }, result -> result == null, () -> {
+      val known = new HashSet<UUID>();
+      for (val uniqueId : uniqueIds) {
+        val result = fallback(uniqueId);
+        if (result < 0) {
+          return null;
+        }
+        if (result == 1) {
+          known.add(uniqueId);
+        }
+      }
+      return known;
+    }, true);
+  }
+
+  @Override
+  public Set<UUID> findEntriesByUniqueIdsForAdmin(@NotNull Collection<UUID> uniqueIds) {
+    // Commands get no remembered answers while the breaker is open, they report the error instead
+    return call(() -> {
+      val found = delegate.findEntriesByUniqueIdsForAdmin(uniqueIds);
+      if (found != null) {
+        uniqueIds.forEach(uniqueId -> remember(uniqueId, found.contains(uniqueId)));
+      }
+      return found;
+    }, result -> result == null, () -> null, true);
+  }
+
+  @Override
+  public List<WhitelistEntry> findAllEntries() {
+    return call(delegate::findAllEntries, result -> result == null, () -> null, true);
+  }
+
+  @Override
+  public ChangeSet findEntriesChangedSince(@NotNull String column, Object marker) {
+    return call(() -> delegate.findEntriesChangedSince(column, marker), result -> result == null, () -> null, true);
+  }
+
+  @Override
+  public boolean hasChangeLog() {
+    return delegate.hasChangeLog();
+  }
+
+  @Override
+  public ChangeLogBounds findChangeLogBounds() {
+    return call(delegate::findChangeLogBounds, result -> result == null, () -> null, true);
+  }
+
+  @Override
+  public List<WhitelistChange> findChangesSince(long version, int limit) {
+    return call(() -> delegate.findChangesSince(version, limit), result -> result == null, () -> null, true);
+  }
+
+  @Override
+  public int pruneChangeLog(long maxAgeSeconds) {
+    return call(() -> delegate.pruneChangeLog(maxAgeSeconds), result -> result < 0, () -> -1, true);
+  }
+
+  @Override
+  public long countEntries() {
+    return call(delegate::countEntries, count -> count < 0, () -> -1L, true);
+  }
+
+  @Override
+  public List<String> findUsernameLikeString(@NotNull String remaining, int limit) {
+    // An empty result is a valid answer, so only exceptions count as failures
+    return call(() -> delegate.findUsernameLikeString(remaining, limit), result -> false, List::of, true);
+  }
+
+  @Override
+  public List<WhitelistEntry> findUsernamePage(@NotNull String prefix, WhitelistEntry after, int limit) {
+    return call(() -> delegate.findUsernamePage(prefix, after, limit), result -> result == null, () -> null, true);
+  }
+
+  @Override
+  public boolean insertWhitelist(@NotNull UUID uniqueId, @NotNull String username) {
+    val success = call(() -> delegate.insertWhitelist(uniqueId, username), result -> !result, () -> false, true);
+    if (success) {
+      remember(uniqueId, true);
+    }
+    return success;
+  }
+
+  @Override
+  public boolean insertWhitelistBatch(@NotNull List<WhitelistEntry> entries) {
+    val success = call(() -> delegate.insertWhitelistBatch(entries), result -> !result, () -> false, true);
+    if (success) {
+      entries.forEach(entry -> remember(entry.uniqueId(), true));
+    }
+    return success;
+  }
+
+  @Override
+  public boolean deleteWhitelist(@NotNull UUID uniqueId) {
+    val success = call(() -> delegate.deleteWhitelist(uniqueId), result -> !result, () -> false, true);
+    if (success) {
+      remember(uniqueId, false);
+    }
+    return success;
+  }
+
+  @Override
+  public boolean deleteWhitelistBatch(@NotNull List<UUID> uniqueIds) {
+    val success = call(() -> delegate.deleteWhitelistBatch(uniqueIds), result -> !result, () -> false, true);
+    if (success) {
+      uniqueIds.forEach(uniqueId -> remember(uniqueId, false));
+    }
+    return success;
+  }
+
+  @Override
+  public boolean streamAllEntries(int fetchSize, @NotNull Consumer<WhitelistEntry> consumer) {
+    // Streaming the whole table is slow by nature, only errors count
+    return call(() -> delegate.streamAllEntries(fetchSize, consumer), result -> !result, () -> false, false);
+  }
+
+  @Override
+  public PoolStats getPoolStats() {
+    return delegate.getPoolStats();
+  }
+
+  @Override
+  public boolean migrateToBinaryUuids(int chunkSize, @NotNull Consumer<String> progress) {
+    return delegate.migrateToBinaryUuids(chunkSize, progress);
+  }
+
+}
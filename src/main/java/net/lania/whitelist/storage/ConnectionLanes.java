@@ -0,0 +1,154 @@
+package net.lania.whitelist.storage;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.val;
+
+/**
+ * Admission control splitting a connection pool between workloads.
+ * Login checks may use every connection of the pool. Tab completion and admin
+ * work (commands, cache refreshes, imports) share what is left once the
+ * connections reserved for logins are set aside, each capped on its own, so a
+ * burst of /vwl list or suggestion queries can never take the last
+ * connections away from joining players.
+ *
+ * <p>
+ * Suggestions never wait: they are shed right away when their lane is full or
+ * when logins already use all of their reserved connections. Admin work waits
+ * a bounded time for a slot.
+ */
+public final class ConnectionLanes {
+
+  /**
+   * Workload a connection is taken for.
+   */
+  public enum Lane {
+    LOGIN, SUGGESTION, ADMIN
+  }
+
+  /**
+   * Slot in a lane, released when closed.
+   */
+  public interface Permit extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  /**
+   * Thrown when a query is refused by its lane.
+   */
+  public static class SaturatedException extends SQLTransientConnectionException {
+    public SaturatedException(String reason) {
+      super(reason);
+    }
+  }
+
+  private final int loginReserved;
+  private final long adminWaitMillis;
+
+  // Connections not reserved for logins, shared by the other lanes
+  private final Semaphore shared;
+  private final Semaphore suggestions;
+  private final Semaphore admin;
+
+  private final AtomicInteger loginsInFlight = new AtomicInteger();
+  private final LongAdder shed = new LongAdder();
+
+  /**
+   * Splits a pool between the lanes.
+   *
+   * @param poolSize        The maximum size of the pool.
+   * @param loginReserved   The number of connections only logins may use,
+   *                        capped so the other lanes keep at least one.
+   * @param suggestionLimit The number of connections suggestions may use at
+   *                        once, 0 for every unreserved connection.
+   * @param adminLimit      The number of connections admin work may use at
+   *                        once, 0 for every unreserved connection.
+   * @param adminWaitMillis How long admin work waits for a slot.
+   */
+  public ConnectionLanes(int poolSize, int loginReserved, int suggestionLimit, int adminLimit,
+      long adminWaitMillis) {
+    this.loginReserved = Math.max(0, Math.min(loginReserved, poolSize - 1));
+    this.adminWaitMillis = adminWaitMillis;
+
+    val unreserved = Math.max(1, poolSize - this.loginReserved);
+    this.shared = new Semaphore(unreserved);
+    this.suggestions = new Semaphore(suggestionLimit > 0 ? Math.min(suggestionLimit, unreserved) : unreserved);
+    this.admin = new Semaphore(adminLimit > 0 ? Math.min(adminLimit, unreserved) : unreserved);
+  }
+
+  /**
+   * Takes a slot in a lane, to be closed once the connection is returned to
+   * the pool.
+   *
+   * @param lane The workload the connection is taken for.
+   * @return The slot.
+   * @throws SaturatedException If the lane refused the query.
+   * @throws SQLException       If the thread was interrupted while waiting.
+   */
+  public Permit acquire(Lane lane) throws SQLException {
+    switch (lane) {
+      case LOGIN:
+        loginsInFlight.incrementAndGet();
+        return loginsInFlight::decrementAndGet;
+      case SUGGESTION:
+        if (loginReserved > 0 && loginsInFlight.get() >= loginReserved) {
+          shed.increment();
+          throw new SaturatedException("Login lane is saturated, suggestion query shed");
+        }
+        return tryAcquire(suggestions, 0, "Suggestion lane is full, query shed");
+      default:
+        return tryAcquire(admin, adminWaitMillis, "Timed out waiting for an admin connection slot");
+    }
+  }
+
+  /**
+   * Takes a slot of a lane and one of the unreserved connections.
+   */
+  private Permit tryAcquire(Semaphore lane, long waitMillis, String reason) throws SQLException {
+    val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+    try {
+      if (!lane.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+        shed.increment();
+        throw new SaturatedException(reason);
+      }
+      if (!shared.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+        lane.release();
+        shed.increment();
+        throw new SaturatedException(reason);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a connection slot", e);
+    }
+
+    return () -> {
+      shared.release();
+      lane.release();
+    };
+  }
+
+  /**
+   * Gets the number of login queries holding or waiting for a connection.
+   *
+   * @return The number of login queries.
+   */
+  public int getLoginsInFlight() {
+    return loginsInFlight.get();
+  }
+
+  /**
+   * Gets the number of queries refused since startup.
+   *
+   * @return The number of shed queries.
+   */
+  public long getShed() {
+    return shed.sum();
+  }
+
+}
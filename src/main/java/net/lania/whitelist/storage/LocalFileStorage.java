@@ -0,0 +1,274 @@
+package net.lania.whitelist.storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import lombok.val;
+import net.lania.whitelist.VelocityWhitelist;
+import net.lania.whitelist.cache.UsernameIndex;
+
+/**
+ * Embedded whitelist storage backed by an append-only file in the plugin data
+ * directory.
+ * Every change is appended as one line ("+uuid name" to add, "-uuid" to
+ * remove) and the whole whitelist is held in memory, so lookups never leave
+ * the process. On startup the file is replayed and compacted. Suited to single
+ * proxy setups, proxies sharing a whitelist need the MySQL storage.
+ */
+public class LocalFileStorage implements WhitelistStorage {
+
+  private final VelocityWhitelist plugin;
+  private final Logger logger;
+  private final Path file;
+
+  private final ConcurrentHashMap<UUID, String> entries = new ConcurrentHashMap<>();
+  // Sorted view of the entries for prefix searches, replaced under writeLock on every change
+  private volatile UsernameIndex usernames = UsernameIndex.empty();
+  private final Object writeLock = new Object();
+  private BufferedWriter writer;
+
+  public LocalFileStorage(VelocityWhitelist plugin, Logger logger, Path file) {
+    this.plugin = plugin;
+    this.logger = logger;
+    this.file = file;
+  }
+
+  @Override
+  public boolean init() {
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      val lines = replay();
+      if (lines > entries.size()) {
+        compact();
+      }
+      usernames = UsernameIndex.copyOf(findAllEntries());
+
+      synchronized (writeLock) {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      }
+      logger.info("Loaded {} whitelist entries from {}", entries.size(), file.getFileName());
+      return true;
+    } catch (IOException e) {
+      logger.error("Failed to open the local whitelist file {}", file, e);
+      return false;
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (writeLock) {
+      if (writer == null) {
+        return;
+      }
+      try {
+        writer.close();
+      } catch (IOException e) {
+        logger.error("Error while closing the local whitelist file", e);
+      }
+      writer = null;
+    }
+  }
+
+  /**
+   * Replays the log file into memory.
+   * Lines that cannot be parsed, such as a line cut short by a crash, are
+   * skipped.
+   *
+   * @return The number of lines in the file.
+   */
+  private long replay() throws IOException {
+    entries.clear();
+    if (!Files.exists(file)) {
+      return 0;
+    }
+
+    var lines = 0L;
+    try (val reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines++;
+        if (!applyLine(line)) {
+          logger.warn("Skipping malformed line {} of {}", lines, file.getFileName());
+        }
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Applies a single log line to the in-memory whitelist.
+   *
+   * @return False if the line is malformed.
+   */
+  private boolean applyLine(String line) {
+    if (line.length() < 2) {
+      return line.isEmpty();
+    }
+
+    try {
+      if (line.charAt(0) == '+') {
+        val separator = line.indexOf(' ');
+        if (separator < 0) {
+          return false;
+        }
+        entries.put(UUID.fromString(line.substring(1, separator)), line.substring(separator + 1));
+        return true;
+      }
+      if (line.charAt(0) == '-') {
+        entries.remove(UUID.fromString(line.substring(1).trim()));
+        return true;
+      }
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    return false;
+  }
+
+  /**
+   * Rewrites the log file with only the current entries.
+   * The new file is written next to the old one and moved over it, so a crash
+   * never leaves a half-written log behind.
+   */
+  private void compact() throws IOException {
+    plugin.logDebug("Compacting {}", file.getFileName());
+
+    val temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (val out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      for (val entry : entries.entrySet()) {
+        out.write(addLine(entry.getKey(), entry.getValue()));
+        out.newLine();
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Appends lines to the log file, flushes them and applies the change to the
+   * in-memory entries under the same lock, so the entries always match the
+   * order of the file that is replayed on the next start.
+   *
+   * @param lines The lines to append.
+   * @param apply Applies the change to the entries once the lines are written.
+   * @return True if the lines were written.
+   */
+  private boolean append(List<String> lines, Runnable apply) {
+    synchronized (writeLock) {
+      if (writer == null) {
+        logger.error("The local whitelist file is not open");
+        return false;
+      }
+      try {
+        for (val line : lines) {
+          writer.write(line);
+          writer.newLine();
+        }
+        writer.flush();
+      } catch (IOException e) {
+        logger.error("Error while writing to the local whitelist file", e);
+        return false;
+      }
+      apply.run();
+      return true;
+    }
+  }
+
+  private static String addLine(UUID uniqueId, String username) {
+    return "+" + uniqueId + " " + username;
+  }
+
+  private static String removeLine(UUID uniqueId) {
+    return "-" + uniqueId;
+  }
+
+  @Override
+  public int findEntryByUniqueId(@NotNull UUID uniqueId) {
+    return entries.containsKey(uniqueId) ? 1 : 0;
+  }
+
+  @Override
+  public Set<UUID> findEntriesByUniqueIds(@NotNull Collection<UUID> uniqueIds) {
+    val found = new HashSet<UUID>();
+    for (val uniqueId : uniqueIds) {
+      if (entries.containsKey(uniqueId)) {
+        found.add(uniqueId);
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public List<WhitelistEntry> findAllEntries() {
+    val result = new ArrayList<WhitelistEntry>(entries.size());
+    entries.forEach((uniqueId, username) -> result.add(new WhitelistEntry(uniqueId, username)));
+    return result;
+  }
+
+  @Override
+  public long countEntries() {
+    return entries.size();
+  }
+
+  @Override
+  public List<String> findUsernameLikeString(@NotNull String remaining, int limit) {
+    return usernames.findByPrefix(remaining, limit);
+  }
+
+  @Override
+  public List<WhitelistEntry> findUsernamePage(@NotNull String prefix, WhitelistEntry after, int limit) {
+    return usernames.findPage(prefix, after, limit);
+  }
+
+  @Override
+  public boolean insertWhitelist(@NotNull UUID uniqueId, @NotNull String username) {
+    return insertWhitelistBatch(List.of(new WhitelistEntry(uniqueId, username)));
+  }
+
+  @Override
+  public boolean insertWhitelistBatch(@NotNull List<WhitelistEntry> batch) {
+    val lines = new ArrayList<String>(batch.size());
+    batch.forEach(entry -> lines.add(addLine(entry.uniqueId(), entry.username())));
+    return append(lines, () -> {
+      batch.forEach(entry -> entries.put(entry.uniqueId(), entry.username()));
+      usernames = usernames.withUpserted(batch);
+    });
+  }
+
+  @Override
+  public boolean deleteWhitelist(@NotNull UUID uniqueId) {
+    return deleteWhitelistBatch(List.of(uniqueId));
+  }
+
+  @Override
+  public boolean deleteWhitelistBatch(@NotNull List<UUID> uniqueIds) {
+    val lines = new ArrayList<String>(uniqueIds.size());
+    uniqueIds.forEach(uniqueId -> lines.add(removeLine(uniqueId)));
+    return append(lines, () -> {
+      uniqueIds.forEach(entries::remove);
+      usernames = usernames.withRemovedAll(uniqueIds);
+    });
+  }
+
+  @Override
+  public boolean streamAllEntries(int fetchSize, @NotNull Consumer<WhitelistEntry> consumer) {
+    entries.forEach((uniqueId, username) -> consumer.accept(new WhitelistEntry(uniqueId, username)));
+    return true;
+  }
+
+}
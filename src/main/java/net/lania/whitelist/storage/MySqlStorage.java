@@ -1,28 +1,55 @@
 package net.lania.whitelist.storage;
 
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
 
 import lombok.val;
 import net.lania.whitelist.ConfigManager;
+import net.lania.whitelist.UuidUtils;
 import net.lania.whitelist.VelocityWhitelist;
+import net.lania.whitelist.config.DatabaseConfig;
+import net.lania.whitelist.storage.ConnectionLanes.Lane;
 
-public class MySqlStorage {
+public class MySqlStorage implements WhitelistStorage {
 
   private final VelocityWhitelist plugin;
   private final Logger logger;
   private final ConfigManager configHandler;
 
-  private HikariDataSource ds;
+  // Replaced as a whole when the pool is rebuilt after a reload
+  private volatile HikariDataSource ds;
+  private volatile ConnectionLanes lanes;
+  private MetricsTrackerFactory metricsTrackerFactory;
+
+  // Whether the table has the BINARY(16) mc_uuid_bin column, written on every insert
+  private volatile boolean binaryColumnPresent;
+  // Whether lookups use mc_uuid_bin, only once every row has it filled in
+  private volatile boolean binaryLookups;
+  // Whether the table has the indexed username_lc column, written on every insert
+  private volatile boolean lowerCaseColumnPresent;
 
   public MySqlStorage(VelocityWhitelist plugin, Logger logger, ConfigManager configHandler) {
     this.plugin = plugin;
@@ -30,6 +57,18 @@ public class MySqlStorage {
     this.configHandler = configHandler;
   }
 
+  /**
+   * Sets the HikariCP metrics tracker factory used by the pool opened by the
+   * next {@link #init()}, e.g. to measure how long callers wait for a
+   * connection.
+   *
+   * @param metricsTrackerFactory The factory, or null for none.
+   */
+  public void setMetricsTrackerFactory(MetricsTrackerFactory metricsTrackerFactory) {
+    this.metricsTrackerFactory = metricsTrackerFactory;
+  }
+
+  @Override
   public boolean init() {
     loadDriver();
     if (!openConnection()) {
@@ -53,17 +92,47 @@ public class MySqlStorage {
   public boolean openConnection() {
     val cfg = configHandler.getDatabase();
     try {
-      val config = new HikariConfig();
-      config.setJdbcUrl(cfg.getUrl());
-      config.setUsername(cfg.getUser());
-      config.setPassword(cfg.getPassword());
-      config.setDriverClassName("org.mariadb.jdbc.Driver");
-      config.setMaximumPoolSize(cfg.getMaxPoolSize());
-      config.setMinimumIdle(cfg.getMinIdle());
-      config.setConnectionTimeout(cfg.getConnectionTimeout());
-      config.setIdleTimeout(cfg.getIdleTimeout());
-      config.setMaxLifetime(cfg.getMaxLifetime());
-      config.setConnectionTestQuery("SELECT 1");
+      ds = createDataSource(cfg);
+      lanes = createLanes(cfg);
+
+      if (cfg.isCreateTables()) {
+        createDatabaseTable();
+      }
+      detectUuidLayout();
+      detectUsernameLayout(cfg.isCreateTables());
+      return true;
+    } catch (SQLException | RuntimeException sqe) {
+      // Leave nothing half open, queries keep failing cleanly until a retry succeeds
+      val partial = ds;
+      ds = null;
+      lanes = null;
+      if (partial != null) {
+        partial.close();
+      }
+      logger.error("Error while connecting to the database: {}", sqe.getMessage());
+      return false;
+    }
+  }
+
+  private HikariDataSource createDataSource(DatabaseConfig cfg) {
+    val config = new HikariConfig();
+    config.setJdbcUrl(cfg.getUrl());
+    config.setUsername(cfg.getUser());
+    config.setPassword(cfg.getPassword());
+    config.setDriverClassName(cfg.getDriverClassName());
+    config.setMaximumPoolSize(cfg.getMaxPoolSize());
+    config.setMinimumIdle(cfg.getMinIdle());
+    config.setConnectionTimeout(cfg.getConnectionTimeout());
+    config.setIdleTimeout(cfg.getIdleTimeout());
+    config.setMaxLifetime(cfg.getMaxLifetime());
+    config.setConnectionTestQuery("SELECT 1");
+    if (metricsTrackerFactory != null) {
+      config.setMetricsTrackerFactory(metricsTrackerFactory);
+    }
+
+    // Statement cache tuning only means something to the MySQL family of
+    // drivers, others may reject unknown properties
+    if (isMySqlUrl(cfg.getUrl())) {
       config.addDataSourceProperty("cachePrepStmts", String.valueOf(cfg.isCacheStmt()));
       config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(cfg.getPrepStmtCacheSize()));
       config.addDataSourceProperty("prepStmtCacheSqlLimit", String.valueOf(cfg.getPrepStmtCacheSqlLimit()));
@@ -72,37 +141,250 @@ public class MySqlStorage {
       config.addDataSourceProperty("cacheServerConfiguration", String.valueOf(cfg.isCacheServerConfiguration()));
       config.addDataSourceProperty("elideSetAutoCommits", String.valueOf(cfg.isElideSetAutoCommit()));
       config.addDataSourceProperty("maintainTimeStats", String.valueOf(cfg.isMaintainTimeStats()));
-      ds = new HikariDataSource(config);
-
-      if (cfg.isCreateTables()) {
-        createDatabaseTable();
-      }
-      return true;
-    } catch (SQLException sqe) {
-      logger.error("Error while connecting to the database: {}", sqe.getMessage());
-      return false;
     }
+    return new HikariDataSource(config);
+  }
+
+  private static ConnectionLanes createLanes(DatabaseConfig cfg) {
+    return new ConnectionLanes(cfg.getMaxPoolSize(), cfg.getLoginReservedConnections(),
+        cfg.getSuggestionConnections(), cfg.getAdminConnections(), cfg.getAdminWaitTimeout());
   }
 
   private void loadDriver() {
+    val driverClassName = configHandler.getDatabase().getDriverClassName();
     try {
-      Class.forName("org.mariadb.jdbc.Driver");
+      Class.forName(driverClassName);
     } catch (ClassNotFoundException e) {
-      logger.error("MariaDB JDBC Driver not found: {}", e.getMessage());
-      throw new RuntimeException("MariaDB JDBC Driver not found", e);
+      logger.error("JDBC Driver {} not found: {}", driverClassName, e.getMessage());
+      throw new RuntimeException("JDBC Driver " + driverClassName + " not found", e);
     }
   }
 
-  public void closeConnection() {
+  private static boolean isMySqlUrl(String url) {
+    return url.startsWith("jdbc:mariadb:") || url.startsWith("jdbc:mysql:");
+  }
+
+  @Override
+  public void close() {
     if (ds != null && !ds.isClosed()) {
       ds.close();
     }
   }
 
+  /**
+   * Applies reloaded database settings.
+   * Connection and pool settings need a new pool, which is built in the
+   * background by {@link #rebuildPool()}. Lane settings alone only replace the
+   * lanes; queries holding a slot release it to the lanes they took it from.
+   *
+   * @param previous The database settings before the reload.
+   * @param current  The reloaded database settings.
+   */
+  public void applyReload(@NotNull DatabaseConfig previous, @NotNull DatabaseConfig current) {
+    // Nothing to rebuild if the storage was never opened
+    if (ds == null) {
+      return;
+    }
+
+    if (!samePool(previous, current)) {
+      logger.info("Database settings changed, opening a new connection pool");
+      plugin.getServer().getScheduler().buildTask(plugin, this::rebuildPool).schedule();
+    } else if (previous.getLoginReservedConnections() != current.getLoginReservedConnections()
+        || previous.getSuggestionConnections() != current.getSuggestionConnections()
+        || previous.getAdminConnections() != current.getAdminConnections()
+        || previous.getAdminWaitTimeout() != current.getAdminWaitTimeout()) {
+      lanes = createLanes(current);
+      plugin.logDebug("Connection lanes updated");
+    }
+  }
+
+  /**
+   * Replaces the connection pool with one built from the current settings.
+   * The new pool is opened and warmed up to its minimum idle size first, while
+   * queries keep running on the old pool. Once swapped in, the old pool retires
+   * its idle connections and is closed as soon as the queries still running on
+   * it have finished, or after {@link #DRAIN_TIMEOUT_MILLIS}. If the new pool
+   * cannot be opened, the old one stays in use.
+   *
+   * @return True if the new pool was swapped in.
+   */
+  public synchronized boolean rebuildPool() {
+    val cfg = configHandler.getDatabase();
+
+    HikariDataSource next = null;
+    try {
+      loadDriver();
+      next = createDataSource(cfg);
+      warmUp(next, Math.min(cfg.getMinIdle(), cfg.getMaxPoolSize()));
+    } catch (SQLException | RuntimeException e) {
+      logger.error("Failed to open the new connection pool, keeping the current one: {}", e.getMessage());
+      if (next != null) {
+        next.close();
+      }
+      return false;
+    }
+
+    val previous = ds;
+    ds = next;
+    lanes = createLanes(cfg);
+    try {
+      if (cfg.isCreateTables()) {
+        createDatabaseTable();
+      }
+    } catch (SQLException e) {
+      logger.warn("Failed to create the tables with the new connection pool: {}", e.getMessage());
+    }
+    detectUuidLayout();
+    detectUsernameLayout(cfg.isCreateTables());
+    logger.info("Switched to the new connection pool");
+
+    drain(previous);
+    return true;
+  }
+
+  private static final long DRAIN_TIMEOUT_MILLIS = 30000;
+
+  /**
+   * Opens connections up front, so the first queries on a new pool do not wait
+   * for connections to be established.
+   */
+  private static void warmUp(HikariDataSource source, int connections) throws SQLException {
+    val opened = new ArrayList<Connection>();
+    try {
+      for (var i = 0; i < Math.max(1, connections); i++) {
+        val conn = source.getConnection();
+        opened.add(conn);
+        if (!conn.isValid(1)) {
+          throw new SQLException("Connection of the new pool is not valid");
+        }
+      }
+    } finally {
+      // Returned connections stay open, idle in the pool
+      for (val conn : opened) {
+        try {
+          conn.close();
+        } catch (SQLException ignored) {
+          // The pool replaces broken connections by itself
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes a pool that was swapped out once its in-flight queries finished.
+   */
+  private void drain(HikariDataSource previous) {
+    if (previous == null || previous.isClosed()) {
+      return;
+    }
+
+    val pool = previous.getHikariPoolMXBean();
+    if (pool != null) {
+      // Idle connections are closed now, the others when they are returned
+      pool.softEvictConnections();
+      val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MILLIS);
+      while (pool.getActiveConnections() > 0 && System.nanoTime() < deadline) {
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      if (pool.getActiveConnections() > 0) {
+        logger.warn("Closing the previous connection pool with {} queries still running",
+            pool.getActiveConnections());
+      }
+    }
+    previous.close();
+  }
+
+  /**
+   * Checks whether two database settings lead to the same connection pool.
+   */
+  private static boolean samePool(DatabaseConfig a, DatabaseConfig b) {
+    return Objects.equals(a.getUrl(), b.getUrl())
+        && Objects.equals(a.getDriverClassName(), b.getDriverClassName())
+        && Objects.equals(a.getUser(), b.getUser())
+        && Objects.equals(a.getPassword(), b.getPassword())
+        && a.getMaxPoolSize() == b.getMaxPoolSize()
+        && a.getMinIdle() == b.getMinIdle()
+        && a.getConnectionTimeout() == b.getConnectionTimeout()
+        && a.getIdleTimeout() == b.getIdleTimeout()
+        && a.getMaxLifetime() == b.getMaxLifetime()
+        && a.isCacheStmt() == b.isCacheStmt()
+        && a.getPrepStmtCacheSize() == b.getPrepStmtCacheSize()
+        && a.getPrepStmtCacheSqlLimit() == b.getPrepStmtCacheSqlLimit()
+        && a.isUseServerPrepStmts() == b.isUseServerPrepStmts()
+        && a.isUseLocalSessionState() == b.isUseLocalSessionState()
+        && a.isCacheServerConfiguration() == b.isCacheServerConfiguration()
+        && a.isElideSetAutoCommit() == b.isElideSetAutoCommit()
+        && a.isMaintainTimeStats() == b.isMaintainTimeStats();
+  }
+
+  /**
+   * Reads the state of the HikariCP pool from its MXBean.
+   *
+   * @return The pool state, or null if the pool is not open.
+   */
+  @Override
+  public PoolStats getPoolStats() {
+    val source = ds;
+    val currentLanes = lanes;
+    if (source == null || source.isClosed() || source.getHikariPoolMXBean() == null) {
+      return null;
+    }
+
+    val pool = source.getHikariPoolMXBean();
+    return new PoolStats(pool.getActiveConnections(), pool.getIdleConnections(), pool.getTotalConnections(),
+        pool.getThreadsAwaitingConnection(), source.getMaximumPoolSize(),
+        currentLanes == null ? 0 : currentLanes.getShed());
+  }
+
+  /**
+   * Takes a slot in a connection lane.
+   *
+   * @throws SQLTransientConnectionException If the pool is not open yet, e.g.
+   *                                         while the first connection is
+   *                                         retried in the background.
+   */
+  private ConnectionLanes.Permit acquire(Lane lane) throws SQLException {
+    val current = lanes;
+    if (current == null || ds == null) {
+      throw new SQLTransientConnectionException("The database connection is not open");
+    }
+    return current.acquire(lane);
+  }
+
   private final String CREATE_TABLE_SQL = """
-      CREATE TABLE IF NOT EXISTS %s (
+      CREATE TABLE IF NOT EXISTS %1$s (
         mc_uuid varchar(36) PRIMARY KEY,
-        username varchar(100) NOT NULL
+        username varchar(100) NOT NULL,
+        username_lc varchar(100) NULL,
+        INDEX %1$s_username_lc (username_lc, mc_uuid)
+      )
+      """;
+
+  // mc_uuid is kept as an indexed column so joins on the text UUID keep working
+  private final String CREATE_BINARY_TABLE_SQL = """
+      CREATE TABLE IF NOT EXISTS %1$s (
+        mc_uuid_bin BINARY(16) PRIMARY KEY,
+        mc_uuid varchar(36) NOT NULL,
+        username varchar(100) NOT NULL,
+        username_lc varchar(100) NULL,
+        UNIQUE INDEX %1$s_mc_uuid (mc_uuid),
+        INDEX %1$s_username_lc (username_lc, mc_uuid)
+      )
+      """;
+
+  private final String CREATE_CHANGE_LOG_TABLE_SQL = """
+      CREATE TABLE IF NOT EXISTS %1$s (
+        version BIGINT AUTO_INCREMENT PRIMARY KEY,
+        mc_uuid varchar(36) NOT NULL,
+        username varchar(100) NULL,
+        removed BOOLEAN NOT NULL,
+        changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+        INDEX %1$s_changed_at (changed_at)
       )
       """;
 
@@ -110,24 +392,335 @@ public class MySqlStorage {
    * Creates the database table if it doesn't exist.
    * This method opens a connection to the database, executes the SQL query,
    * and then closes the connection.
+   * New tables are keyed on BINARY(16) if binary UUIDs are enabled. The change
+   * log table is created as well if it is enabled.
    */
   public void createDatabaseTable() throws SQLException {
     plugin.logDebug("Creating database table");
 
-    val query = String.format(CREATE_TABLE_SQL, configHandler.getDatabase().getWhitelistTable());
+    val cfg = configHandler.getDatabase();
+    val query = String.format(cfg.isBinaryUuids() ? CREATE_BINARY_TABLE_SQL : CREATE_TABLE_SQL,
+        cfg.getWhitelistTable());
     try (val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
       st.executeUpdate();
     }
+
+    if (hasChangeLog()) {
+      try (val conn = ds.getConnection();
+          val st = conn.prepareStatement(String.format(CREATE_CHANGE_LOG_TABLE_SQL, cfg.getChangeLogTable()))) {
+        st.executeUpdate();
+      }
+    }
+  }
+
+  private final String COUNT_UNMIGRATED_SQL = """
+      SELECT COUNT(*) FROM %s WHERE mc_uuid_bin IS NULL
+      """;
+
+  /**
+   * Detects whether the table has the BINARY(16) UUID column and whether it is
+   * complete enough to be used for lookups: every row filled in and the
+   * primary key moved to it.
+   * If binary UUIDs are enabled but the migration has not finished, lookups
+   * keep using the varchar column until it has.
+   */
+  private void detectUuidLayout() {
+    val cfg = configHandler.getDatabase();
+    val table = cfg.getWhitelistTable();
+    try (val conn = ds.getConnection()) {
+      binaryColumnPresent = hasColumn(conn, table, "mc_uuid_bin");
+
+      var unmigrated = 0L;
+      if (binaryColumnPresent) {
+        try (val st = conn.prepareStatement(String.format(COUNT_UNMIGRATED_SQL, table));
+            val result = st.executeQuery()) {
+          unmigrated = result.next() ? result.getLong(1) : 0;
+        }
+      }
+
+      // Only the primary key guarantees that no row without a binary UUID can
+      // be inserted later, e.g. by a proxy that has not seen the column yet
+      binaryLookups = cfg.isBinaryUuids() && binaryColumnPresent && unmigrated == 0
+          && indexColumns(conn, table, "PRIMARY").equals(List.of("mc_uuid_bin"));
+      if (cfg.isBinaryUuids() && !binaryLookups) {
+        logger.warn("Binary UUIDs are enabled but {} is not migrated yet, run /vwl migrate", table);
+      }
+    } catch (SQLException e) {
+      logger.error("Error while detecting the UUID layout of the whitelist table", e);
+      binaryColumnPresent = false;
+      binaryLookups = false;
+    }
+  }
+
+  /**
+   * Checks whether a table has a column.
+   * Reads the JDBC metadata of the current catalog and schema rather than
+   * information_schema, so the check also holds on databases whose schema is
+   * not the catalog, such as H2 in MySQL mode.
+   */
+  private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+    val meta = conn.getMetaData();
+    try (val result = meta.getColumns(conn.getCatalog(), conn.getSchema(), identifier(meta, table),
+        identifier(meta, column))) {
+      // Underscores are wildcards in metadata patterns, keep exact matches only
+      while (result.next()) {
+        if (table.equalsIgnoreCase(result.getString("TABLE_NAME"))
+            && column.equalsIgnoreCase(result.getString("COLUMN_NAME"))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Converts a name to the case the database stores unquoted identifiers in.
+   */
+  private static String identifier(DatabaseMetaData meta, String name) throws SQLException {
+    if (meta.storesUpperCaseIdentifiers()) {
+      return name.toUpperCase(Locale.ROOT);
+    }
+    if (meta.storesLowerCaseIdentifiers()) {
+      return name.toLowerCase(Locale.ROOT);
+    }
+    return name;
+  }
+
+  private final String ADD_LOWER_CASE_COLUMN_SQL = """
+      ALTER TABLE %1$s ADD COLUMN username_lc varchar(100) NULL,
+        ADD INDEX %1$s_username_lc (username_lc, mc_uuid)
+      """;
+
+  private final String FILL_LOWER_CASE_CHUNK_SQL = """
+      UPDATE %s SET username_lc = LOWER(username)
+      WHERE username_lc IS NULL
+      LIMIT ?
+      """;
+
+  private static final int FILL_LOWER_CASE_CHUNK_SIZE = 5000;
+
+  /**
+   * Detects whether the table has the lower-case username column that keeps
+   * username searches and /vwl list pages on an index.
+   * The plugin manages this column itself: when it may create tables, the
+   * column and its index are added to older tables. Whenever the column exists,
+   * rows written without it, e.g. by other tools or older plugin versions, are
+   * filled in chunks on every start and pool rebuild, whether or not the plugin
+   * manages the tables, so they do not drop out of searches. Without the column,
+   * searches fall back to LOWER(username), which works but scans the table.
+   *
+   * @param manage Whether the column may be added.
+   */
+  private void detectUsernameLayout(boolean manage) {
+    val table = configHandler.getDatabase().getWhitelistTable();
+    try (val conn = ds.getConnection()) {
+      var present = hasColumn(conn, table, "username_lc");
+      if (!present && manage) {
+        logger.info("Adding the lower-case username column to {}", table);
+        try (val st = conn.prepareStatement(String.format(ADD_LOWER_CASE_COLUMN_SQL, table))) {
+          st.executeUpdate();
+        }
+        present = true;
+      }
+      // Written by every insert from here on, so the fill below catches up for good
+      lowerCaseColumnPresent = present;
+
+      if (present) {
+        var filled = 0L;
+        try (val st = conn.prepareStatement(String.format(FILL_LOWER_CASE_CHUNK_SQL, table))) {
+          while (true) {
+            st.setInt(1, FILL_LOWER_CASE_CHUNK_SIZE);
+            val updated = st.executeUpdate();
+            if (updated == 0) {
+              break;
+            }
+            filled += updated;
+          }
+        }
+        if (filled > 0) {
+          logger.info("Filled the lower-case username of {} rows of {}", filled, table);
+        }
+      } else if (!present) {
+        logger.warn("{} has no username_lc column, /vwl list scans the whole table", table);
+      }
+    } catch (SQLException e) {
+      logger.warn("Error while preparing the lower-case username column: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Gets the expression holding the lower-cased username.
+   *
+   * @return username_lc if the table has it, LOWER(username) otherwise.
+   */
+  private String lowerCaseUsername() {
+    return lowerCaseColumnPresent ? "username_lc" : "LOWER(username)";
+  }
+
+  /**
+   * Escapes the LIKE wildcards of a prefix, for a pattern using '!' as escape
+   * character, and appends the trailing wildcard.
+   */
+  private static String prefixPattern(String prefix) {
+    return prefix.toLowerCase(Locale.ROOT)
+        .replace("!", "!!")
+        .replace("%", "!%")
+        .replace("_", "!_") + "%";
+  }
+
+  /**
+   * Gets the column used to look up whitelist entries by UUID.
+   *
+   * @return mc_uuid_bin once binary lookups are active, mc_uuid otherwise.
+   */
+  private String uuidColumn() {
+    return binaryLookups ? "mc_uuid_bin" : "mc_uuid";
+  }
+
+  /**
+   * Binds a UUID to a statement parameter in the format of {@link #uuidColumn()}.
+   */
+  private void bindUniqueId(PreparedStatement st, int index, UUID uniqueId) throws SQLException {
+    if (binaryLookups) {
+      st.setBytes(index, UuidUtils.toBytes(uniqueId));
+    } else {
+      st.setString(index, uniqueId.toString());
+    }
+  }
+
+  /**
+   * Gets the lower-cased columns of an index, in index order, from the JDBC
+   * metadata. The index named PRIMARY is the primary key, whatever name the
+   * database gives it.
+   *
+   * @return The columns, empty if the index does not exist.
+   */
+  private static List<String> indexColumns(Connection conn, String table, String index) throws SQLException {
+    val meta = conn.getMetaData();
+    val columns = new TreeMap<Integer, String>();
+    if ("PRIMARY".equals(index)) {
+      try (val result = meta.getPrimaryKeys(conn.getCatalog(), conn.getSchema(), identifier(meta, table))) {
+        while (result.next()) {
+          columns.put(result.getInt("KEY_SEQ"), result.getString("COLUMN_NAME").toLowerCase(Locale.ROOT));
+        }
+      }
+    } else {
+      try (val result = meta.getIndexInfo(conn.getCatalog(), conn.getSchema(), identifier(meta, table), false,
+          false)) {
+        while (result.next()) {
+          val column = result.getString("COLUMN_NAME");
+          if (column != null && index.equalsIgnoreCase(result.getString("INDEX_NAME"))) {
+            columns.put(result.getInt("ORDINAL_POSITION"), column.toLowerCase(Locale.ROOT));
+          }
+        }
+      }
+    }
+    return new ArrayList<>(columns.values());
+  }
+
+  private final String ADD_BINARY_COLUMN_SQL = """
+      ALTER TABLE %s ADD COLUMN mc_uuid_bin BINARY(16) NULL
+      """;
+
+  private final String MIGRATE_CHUNK_SQL = """
+      UPDATE %s SET mc_uuid_bin = UNHEX(REPLACE(mc_uuid, '-', ''))
+      WHERE mc_uuid_bin IS NULL
+      LIMIT ?
+      """;
+
+  private final String SWAP_PRIMARY_KEY_SQL = """
+      ALTER TABLE %1$s
+        MODIFY mc_uuid_bin BINARY(16) NOT NULL,
+        DROP PRIMARY KEY,
+        ADD PRIMARY KEY (mc_uuid_bin)%2$s
+      """;
+
+  private final String ADD_TEXT_UUID_INDEX_SQL = """
+      ,
+        ADD UNIQUE INDEX %1$s_mc_uuid (mc_uuid)""";
+
+  // Left behind by earlier versions of the migration, redundant with the primary key
+  private final String DROP_BINARY_INDEX_SQL = """
+      ALTER TABLE %1$s DROP INDEX %1$s_mc_uuid_bin
+      """;
+
+  /**
+   * Migrates the whitelist table from varchar(36) UUIDs to BINARY(16) UUIDs.
+   * The BINARY(16) column is added next to the existing one, then filled in
+   * chunks that each commit on their own, so no lock is held for long. Only rows
+   * without a binary UUID are touched, so an interrupted migration can simply
+   * be run again. Once every row is filled, the primary key is moved to the
+   * binary column and the text column keeps a unique secondary index. InnoDB
+   * stores the primary key in every secondary index, so the key swap is what
+   * halves the key size; it rebuilds the table once. Lookups then switch to the
+   * binary column if binary UUIDs are enabled.
+   * Every step checks the schema first instead of relying on IF NOT EXISTS,
+   * which MySQL does not support for columns and indexes.
+   *
+   * @param chunkSize The number of rows converted per statement.
+   * @param progress  Receives a progress message after every chunk.
+   * @return True if the migration completed, false on error.
+   */
+  @Override
+  public boolean migrateToBinaryUuids(int chunkSize, @NotNull Consumer<String> progress) {
+    val table = configHandler.getDatabase().getWhitelistTable();
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection()) {
+      if (!hasColumn(conn, table, "mc_uuid_bin")) {
+        try (val st = conn.prepareStatement(String.format(ADD_BINARY_COLUMN_SQL, table))) {
+          st.executeUpdate();
+        }
+      }
+      // From here on every insert fills the binary column as well, other
+      // proxies notice the column before their next insert
+      binaryColumnPresent = true;
+
+      var total = 0L;
+      try (val st = conn.prepareStatement(String.format(MIGRATE_CHUNK_SQL, table))) {
+        while (true) {
+          st.setInt(1, chunkSize);
+          val updated = st.executeUpdate();
+          if (updated == 0) {
+            break;
+          }
+          total += updated;
+          progress.accept("Converted " + total + " rows");
+        }
+      }
+
+      if (!indexColumns(conn, table, "PRIMARY").equals(List.of("mc_uuid_bin"))) {
+        progress.accept("Moving the primary key to the binary UUID column");
+        val textIndex = indexColumns(conn, table, table + "_mc_uuid").isEmpty()
+            ? String.format(ADD_TEXT_UUID_INDEX_SQL, table)
+            : "";
+        try (val st = conn.prepareStatement(String.format(SWAP_PRIMARY_KEY_SQL, table, textIndex))) {
+          st.executeUpdate();
+        }
+      }
+
+      if (!indexColumns(conn, table, table + "_mc_uuid_bin").isEmpty()) {
+        try (val st = conn.prepareStatement(String.format(DROP_BINARY_INDEX_SQL, table))) {
+          st.executeUpdate();
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("Error while migrating the whitelist table to binary UUIDs", e);
+      return false;
+    }
+
+    detectUuidLayout();
+    return true;
   }
 
   private final String FIND_ENTRY_BY_UNIQUE_ID_SQL = """
-      SELECT mc_uuid FROM %s WHERE mc_uuid = ?
+      SELECT mc_uuid FROM %1$s WHERE %2$s = ?
       """;
 
+  @Override
   public int findEntryByUniqueId(@NotNull UUID uniqueId) {
-    val query = String.format(FIND_ENTRY_BY_UNIQUE_ID_SQL, configHandler.getDatabase().getWhitelistTable());
-    try (val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
-      st.setString(1, uniqueId.toString());
+    val query = String.format(FIND_ENTRY_BY_UNIQUE_ID_SQL, configHandler.getDatabase().getWhitelistTable(),
+        uuidColumn());
+    try (val permit = acquire(Lane.LOGIN); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      bindUniqueId(st, 1, uniqueId);
       val result = st.executeQuery();
       return result.next() ? 1 : 0;
     } catch (SQLException e) {
@@ -136,26 +729,323 @@ public class MySqlStorage {
     }
   }
 
+  private final String FIND_ENTRIES_BY_UNIQUE_IDS_SQL = """
+      SELECT mc_uuid FROM %1$s WHERE %2$s IN (%3$s)
+      """;
+
+  /**
+   * Checks which of the given UUIDs are whitelisted, using a single query.
+   *
+   * @param uniqueIds The UUIDs to look up.
+   * @return The subset of the UUIDs that are whitelisted, or null if the
+   *         whitelist could not be checked.
+   */
+  @Override
+  public Set<UUID> findEntriesByUniqueIds(@NotNull Collection<UUID> uniqueIds) {
+    return findEntriesByUniqueIds(uniqueIds, Lane.LOGIN);
+  }
+
+  @Override
+  public Set<UUID> findEntriesByUniqueIdsForAdmin(@NotNull Collection<UUID> uniqueIds) {
+    return findEntriesByUniqueIds(uniqueIds, Lane.ADMIN);
+  }
+
+  private Set<UUID> findEntriesByUniqueIds(Collection<UUID> uniqueIds, Lane lane) {
+    val found = new HashSet<UUID>();
+    if (uniqueIds.isEmpty()) {
+      return found;
+    }
+
+    val placeholders = String.join(", ", Collections.nCopies(uniqueIds.size(), "?"));
+    val query = String.format(FIND_ENTRIES_BY_UNIQUE_IDS_SQL, configHandler.getDatabase().getWhitelistTable(),
+        uuidColumn(), placeholders);
+    try (val permit = acquire(lane); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      var index = 1;
+      for (val uniqueId : uniqueIds) {
+        bindUniqueId(st, index++, uniqueId);
+      }
+      try (val result = st.executeQuery()) {
+        while (result.next()) {
+          found.add(UUID.fromString(result.getString("mc_uuid")));
+        }
+      }
+    } catch (SQLException | IllegalArgumentException e) {
+      logger.error("Error while checking if users are whitelisted", e);
+      return null;
+    }
+    return found;
+  }
+
+  private final String FIND_ALL_ENTRIES_SQL = """
+      SELECT mc_uuid, username FROM %s
+      """;
+
+  /**
+   * Loads every entry of the whitelist table.
+   * Used to fill the in-memory whitelist cache.
+   *
+   * @return The entries of the whitelist table, or null if the table could not
+   *         be read.
+   */
+  @Override
+  public List<WhitelistEntry> findAllEntries() {
+    val resultList = new ArrayList<WhitelistEntry>();
+
+    val query = String.format(FIND_ALL_ENTRIES_SQL, configHandler.getDatabase().getWhitelistTable());
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      try (val result = st.executeQuery()) {
+        while (result.next()) {
+          val entry = readEntry(result);
+          if (entry != null) {
+            resultList.add(entry);
+          }
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("Error while loading the whitelist", e);
+      return null;
+    }
+    return resultList;
+  }
+
+  private final String FIND_ALL_ENTRIES_BY_MARKER_SQL = """
+      SELECT mc_uuid, username, %2$s FROM %1$s ORDER BY %2$s
+      """;
+
+  private final String FIND_ENTRIES_CHANGED_SINCE_SQL = """
+      SELECT mc_uuid, username, %2$s FROM %1$s WHERE %2$s >= ? ORDER BY %2$s
+      """;
+
+  /**
+   * Loads the entries of the whitelist table whose change marker column is at
+   * least the given marker.
+   * Rows sharing the previous marker are fetched again on purpose, so rows
+   * committed later with the same marker value are never missed.
+   *
+   * @param column The name of the change marker column (e.g. an updated_at
+   *               timestamp or an auto-increment id).
+   * @param marker The marker returned by the previous call, or null to load the
+   *               whole table.
+   * @return The changed entries and the new marker, or null if the table could
+   *         not be read.
+   */
+  @Override
+  public ChangeSet findEntriesChangedSince(@NotNull String column, Object marker) {
+    val resultList = new ArrayList<WhitelistEntry>();
+    var lastMarker = marker;
+
+    val table = configHandler.getDatabase().getWhitelistTable();
+    val query = marker == null
+        ? String.format(FIND_ALL_ENTRIES_BY_MARKER_SQL, table, column)
+        : String.format(FIND_ENTRIES_CHANGED_SINCE_SQL, table, column);
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      if (marker != null) {
+        st.setObject(1, marker);
+      }
+      try (val result = st.executeQuery()) {
+        while (result.next()) {
+          lastMarker = result.getObject(3);
+          val entry = readEntry(result);
+          if (entry != null) {
+            resultList.add(entry);
+          }
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("Error while loading whitelist changes", e);
+      return null;
+    }
+    return new ChangeSet(resultList, lastMarker);
+  }
+
+  @Override
+  public boolean hasChangeLog() {
+    return !configHandler.getDatabase().getChangeLogTable().isEmpty();
+  }
+
+  private final String FIND_CHANGE_LOG_BOUNDS_SQL = """
+      SELECT MIN(version), MAX(version) FROM %s
+      """;
+
+  @Override
+  public ChangeLogBounds findChangeLogBounds() {
+    if (!hasChangeLog()) {
+      return null;
+    }
+
+    val query = String.format(FIND_CHANGE_LOG_BOUNDS_SQL, configHandler.getDatabase().getChangeLogTable());
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      try (val result = st.executeQuery()) {
+        // MIN and MAX are NULL on an empty table, getLong maps that to 0
+        return result.next() ? new ChangeLogBounds(result.getLong(1), result.getLong(2)) : new ChangeLogBounds(0, 0);
+      }
+    } catch (SQLException e) {
+      logger.error("Error while reading the whitelist change log bounds", e);
+      return null;
+    }
+  }
+
+  private final String FIND_CHANGES_SINCE_SQL = """
+      SELECT version, mc_uuid, username, removed FROM %s
+      WHERE version > ?
+      ORDER BY version
+      LIMIT ?
+      """;
+
+  /**
+   * Loads the change log rows newer than a version, using the primary key, so
+   * polling costs a single index range scan even when nothing changed.
+   *
+   * @param version The last version already applied.
+   * @param limit   The maximum number of changes to return.
+   * @return The changes ordered by version, or null on error.
+   */
+  @Override
+  public List<WhitelistChange> findChangesSince(long version, int limit) {
+    if (!hasChangeLog()) {
+      return null;
+    }
+
+    val changes = new ArrayList<WhitelistChange>();
+    val query = String.format(FIND_CHANGES_SINCE_SQL, configHandler.getDatabase().getChangeLogTable());
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      st.setLong(1, version);
+      st.setInt(2, limit);
+      try (val result = st.executeQuery()) {
+        while (result.next()) {
+          val rawUniqueId = result.getString("mc_uuid");
+          try {
+            changes.add(new WhitelistChange(result.getLong("version"), UUID.fromString(rawUniqueId),
+                result.getString("username"), result.getBoolean("removed")));
+          } catch (IllegalArgumentException e) {
+            logger.warn("Skipping whitelist change with malformed UUID: {}", rawUniqueId);
+          }
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("Error while reading the whitelist change log", e);
+      return null;
+    }
+    return changes;
+  }
+
+  private final String PRUNE_CHANGE_LOG_SQL = """
+      DELETE FROM %s
+      WHERE changed_at < NOW() - INTERVAL ? SECOND AND version < ?
+      """;
+
+  @Override
+  public int pruneChangeLog(long maxAgeSeconds) {
+    val bounds = findChangeLogBounds();
+    if (bounds == null) {
+      return -1;
+    }
+
+    val query = String.format(PRUNE_CHANGE_LOG_SQL, configHandler.getDatabase().getChangeLogTable());
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      st.setLong(1, maxAgeSeconds);
+      st.setLong(2, bounds.latestVersion());
+      return st.executeUpdate();
+    } catch (SQLException e) {
+      logger.error("Error while pruning the whitelist change log", e);
+      return -1;
+    }
+  }
+
+  private final String INSERT_CHANGE_SQL = """
+      INSERT INTO %s (mc_uuid, username, removed) VALUES (?, ?, ?)
+      """;
+
+  /**
+   * Appends changes to the change log on the given connection, so they are
+   * committed in the same transaction as the whitelist change itself.
+   * Does nothing if the change log is disabled.
+   *
+   * @param conn      The connection of the running transaction.
+   * @param uniqueIds The UUIDs that changed.
+   * @param usernames The usernames of the added players, in the same order, or
+   *                  null for removals.
+   */
+  private void appendChanges(Connection conn, List<UUID> uniqueIds, List<String> usernames) throws SQLException {
+    if (!hasChangeLog()) {
+      return;
+    }
+
+    val query = String.format(INSERT_CHANGE_SQL, configHandler.getDatabase().getChangeLogTable());
+    try (val st = conn.prepareStatement(query)) {
+      for (var i = 0; i < uniqueIds.size(); i++) {
+        st.setString(1, uniqueIds.get(i).toString());
+        st.setString(2, usernames == null ? null : usernames.get(i));
+        st.setBoolean(3, usernames == null);
+        st.addBatch();
+      }
+      st.executeBatch();
+    }
+  }
+
+  private final String COUNT_ENTRIES_SQL = """
+      SELECT COUNT(*) FROM %s
+      """;
+
+  /**
+   * Counts the entries of the whitelist table.
+   * Used by the cache to detect rows deleted outside of the plugin.
+   *
+   * @return The number of entries, or -1 if the table could not be read.
+   */
+  @Override
+  public long countEntries() {
+    val query = String.format(COUNT_ENTRIES_SQL, configHandler.getDatabase().getWhitelistTable());
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      try (val result = st.executeQuery()) {
+        return result.next() ? result.getLong(1) : 0;
+      }
+    } catch (SQLException e) {
+      logger.error("Error while counting whitelist entries", e);
+      return -1;
+    }
+  }
+
+  /**
+   * Reads the UUID and username columns of the current row.
+   *
+   * @param result The ResultSet positioned on a row.
+   * @return The entry, or null if the stored UUID is malformed.
+   */
+  private WhitelistEntry readEntry(ResultSet result) throws SQLException {
+    val rawUniqueId = result.getString("mc_uuid");
+    try {
+      return new WhitelistEntry(UUID.fromString(rawUniqueId), result.getString("username"));
+    } catch (IllegalArgumentException e) {
+      logger.warn("Skipping whitelist entry with malformed UUID: {}", rawUniqueId);
+      return null;
+    }
+  }
+
   private final String FIND_USERNAME_LIKE_STRING_SQL = """
-      SELECT p.mc_username
-      FROM %s a
-      INNER JOIN profiles p ON p.mc_uuid = a.mc_uuid
-      WHERE p.mc_username LIKE ?
+      SELECT username FROM %1$s
+      WHERE %2$s LIKE ? ESCAPE '!'
+      ORDER BY %2$s
       LIMIT ?
       """;
 
+  @Override
   public List<String> findUsernameLikeString(@NotNull String remaining, int limit) {
     val resultList = new ArrayList<String>();
 
-    val query = String.format(FIND_USERNAME_LIKE_STRING_SQL, configHandler.getDatabase().getWhitelistTable());
-    try (val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
-      st.setString(1, remaining + "%");
+    val query = String.format(FIND_USERNAME_LIKE_STRING_SQL, configHandler.getDatabase().getWhitelistTable(),
+        lowerCaseUsername());
+    try (val permit = acquire(Lane.SUGGESTION); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      st.setString(1, prefixPattern(remaining));
       st.setInt(2, limit);
       try (val result = st.executeQuery()) {
         while (result.next()) {
-          resultList.add(result.getString("mc_username"));
+          resultList.add(result.getString("username"));
         }
       }
+    } catch (SQLTransientConnectionException e) {
+      plugin.logDebug("Skipped username suggestions: {}", e.getMessage());
+      return Collections.emptyList();
     } catch (SQLException e) {
       logger.error("Error while finding username like string", e);
       return Collections.emptyList();
@@ -163,40 +1053,199 @@ public class MySqlStorage {
     return resultList;
   }
 
+  // The leading >= keeps the scan on the index, the rest skips the ties
+  // already listed on the previous page
+  private final String FIND_USERNAME_PAGE_SQL = """
+      SELECT mc_uuid, username FROM %1$s
+      WHERE %2$s LIKE ? ESCAPE '!'
+        AND %2$s >= ? AND (%2$s > ? OR mc_uuid > ?)
+      ORDER BY %2$s, mc_uuid
+      LIMIT ?
+      """;
+
+  /**
+   * Reads one page of usernames with keyset pagination.
+   * The page starts right after the last entry of the previous page in the
+   * (username_lc, mc_uuid) index, so every page is a short index range scan
+   * instead of an OFFSET that reads and discards every earlier row.
+   */
+  @Override
+  public List<WhitelistEntry> findUsernamePage(@NotNull String prefix, WhitelistEntry after, int limit) {
+    val afterKey = after == null ? "" : after.username().toLowerCase(Locale.ROOT);
+    val afterUniqueId = after == null ? "" : after.uniqueId().toString();
+
+    val query = String.format(FIND_USERNAME_PAGE_SQL, configHandler.getDatabase().getWhitelistTable(),
+        lowerCaseUsername());
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      st.setString(1, prefixPattern(prefix));
+      st.setString(2, afterKey);
+      st.setString(3, afterKey);
+      st.setString(4, afterUniqueId);
+      st.setInt(5, limit);
+
+      val page = new ArrayList<WhitelistEntry>(limit);
+      try (val result = st.executeQuery()) {
+        while (result.next()) {
+          val entry = readEntry(result);
+          if (entry != null) {
+            page.add(entry);
+          }
+        }
+      }
+      return page;
+    } catch (SQLException e) {
+      logger.error("Error while listing whitelisted usernames", e);
+      return null;
+    }
+  }
+
   // TODO: Call backend API to insert whitelist
   private final String INSERT_WHITELIST_SQL = """
-      INSERT INTO %s (mc_uuid, mc_username)
-      VALUES (?, ?)
-      ON DUPLICATE KEY UPDATE unique_id = VALUES(unique_id)
+      INSERT INTO %s (mc_uuid, username%s)
+      VALUES (?, ?%s)
+      ON DUPLICATE KEY UPDATE username = VALUES(username)%s
       """;
 
+  @Override
   public boolean insertWhitelist(@NotNull UUID uniqueId, @NotNull String username) {
-    val query = String.format(INSERT_WHITELIST_SQL, configHandler.getDatabase().getWhitelistTable());
-    try (val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
-      st.setString(1, uniqueId.toString());
-      st.setString(2, username);
-      st.executeUpdate();
+    return insertWhitelistBatch(List.of(new WhitelistEntry(uniqueId, username)));
+  }
+
+  /**
+   * Inserts many whitelist entries with batched statements.
+   * The entries are written as one JDBC batch inside a single transaction, so
+   * either all of them are stored or none are. The change log rows are written
+   * in the same transaction.
+   *
+   * @param entries The entries to insert. Existing UUIDs get their username
+   *                updated.
+   * @return True if the batch was committed, false on error.
+   */
+  @Override
+  public boolean insertWhitelistBatch(@NotNull List<WhitelistEntry> entries) {
+    if (entries.isEmpty()) {
       return true;
+    }
+
+    val table = configHandler.getDatabase().getWhitelistTable();
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection()) {
+      // Another proxy may have started /vwl migrate since the layout was detected,
+      // rows inserted without the binary UUID would be missed by binary lookups
+      if (!binaryColumnPresent && hasColumn(conn, table, "mc_uuid_bin")) {
+        binaryColumnPresent = true;
+      }
+      val withBinary = binaryColumnPresent;
+      val withLowerCase = lowerCaseColumnPresent;
+      val query = String.format(INSERT_WHITELIST_SQL, table,
+          (withLowerCase ? ", username_lc" : "") + (withBinary ? ", mc_uuid_bin" : ""),
+          (withLowerCase ? ", ?" : "") + (withBinary ? ", ?" : ""),
+          withLowerCase ? ", username_lc = VALUES(username_lc)" : "");
+      conn.setAutoCommit(false);
+      try (val st = conn.prepareStatement(query)) {
+        for (val entry : entries) {
+          st.setString(1, entry.uniqueId().toString());
+          st.setString(2, entry.username());
+          var index = 3;
+          if (withLowerCase) {
+            st.setString(index++, entry.username().toLowerCase(Locale.ROOT));
+          }
+          if (withBinary) {
+            st.setBytes(index, UuidUtils.toBytes(entry.uniqueId()));
+          }
+          st.addBatch();
+        }
+        st.executeBatch();
+        appendChanges(conn, entries.stream().map(WhitelistEntry::uniqueId).toList(),
+            entries.stream().map(WhitelistEntry::username).toList());
+        conn.commit();
+        return true;
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(true);
+      }
     } catch (SQLException e) {
-      logger.error("Error while inserting whitelist", e);
+      logger.error("Error while inserting whitelist batch", e);
       return false;
     }
   }
 
-  private final String DELETE_WHITELIST_SQL = """
-      DELETE FROM %s
-      WHERE mc_uuid = ?
-      """;
+  /**
+   * Streams every entry of the whitelist table to a consumer.
+   * Rows are fetched from the server in chunks instead of being loaded all at
+   * once, so memory use does not depend on the size of the table.
+   *
+   * @param fetchSize The number of rows fetched per round trip.
+   * @param consumer  Receives every entry, in no particular order.
+   * @return True if the whole table was read, false on error.
+   */
+  @Override
+  public boolean streamAllEntries(int fetchSize, @NotNull Consumer<WhitelistEntry> consumer) {
+    val query = String.format(FIND_ALL_ENTRIES_SQL, configHandler.getDatabase().getWhitelistTable());
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
+      st.setFetchSize(fetchSize);
+      try (val result = st.executeQuery()) {
+        while (result.next()) {
+          val entry = readEntry(result);
+          if (entry != null) {
+            consumer.accept(entry);
+          }
+        }
+      }
+      return true;
+    } catch (SQLException e) {
+      logger.error("Error while exporting the whitelist", e);
+      return false;
+    }
+  }
 
   // TODO: Call backend API to delete whitelist
+  @Override
   public boolean deleteWhitelist(@NotNull UUID uniqueId) {
-    val query = String.format(DELETE_WHITELIST_SQL, configHandler.getDatabase().getWhitelistTable());
-    try (val conn = ds.getConnection(); val st = conn.prepareStatement(query)) {
-      st.setString(1, uniqueId.toString());
-      st.executeUpdate();
+    return deleteWhitelistBatch(List.of(uniqueId));
+  }
+
+  private final String DELETE_WHITELIST_BATCH_SQL = """
+      DELETE FROM %1$s
+      WHERE %2$s IN (%3$s)
+      """;
+
+  /**
+   * Deletes many whitelist entries with a single statement in one transaction,
+   * together with their change log rows.
+   *
+   * @param uniqueIds The UUIDs to delete.
+   * @return True if the delete was committed, false on error.
+   */
+  @Override
+  public boolean deleteWhitelistBatch(@NotNull List<UUID> uniqueIds) {
+    if (uniqueIds.isEmpty()) {
       return true;
+    }
+
+    val placeholders = String.join(", ", Collections.nCopies(uniqueIds.size(), "?"));
+    val query = String.format(DELETE_WHITELIST_BATCH_SQL, configHandler.getDatabase().getWhitelistTable(),
+        uuidColumn(), placeholders);
+    try (val permit = acquire(Lane.ADMIN); val conn = ds.getConnection()) {
+      conn.setAutoCommit(false);
+      try (val st = conn.prepareStatement(query)) {
+        var index = 1;
+        for (val uniqueId : uniqueIds) {
+          bindUniqueId(st, index++, uniqueId);
+        }
+        st.executeUpdate();
+        appendChanges(conn, uniqueIds, null);
+        conn.commit();
+        return true;
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(true);
+      }
     } catch (SQLException e) {
-      logger.error("Error while deleting whitelist", e);
+      logger.error("Error while deleting whitelist batch", e);
       return false;
     }
   }
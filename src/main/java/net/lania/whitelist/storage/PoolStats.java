@@ -0,0 +1,14 @@
+package net.lania.whitelist.storage;
+
+/**
+ * Point-in-time state of a connection pool.
+ *
+ * @param active  The number of connections in use.
+ * @param idle    The number of connections waiting in the pool.
+ * @param total   The number of open connections.
+ * @param waiting The number of threads waiting for a connection.
+ * @param maximum The maximum size of the pool.
+ * @param shed    The number of queries refused by the connection lanes.
+ */
+public record PoolStats(int active, int idle, int total, int waiting, int maximum, long shed) {
+}
@@ -0,0 +1,15 @@
+package net.lania.whitelist.storage;
+
+import java.util.UUID;
+
+/**
+ * A single row of the whitelist change log.
+ *
+ * @param version  The position of the change in the log, increasing with every
+ *                 change.
+ * @param uniqueId The UUID of the player that was added or removed.
+ * @param username The username stored with the UUID, null for removals.
+ * @param removed  True if the player was removed from the whitelist.
+ */
+public record WhitelistChange(long version, UUID uniqueId, String username, boolean removed) {
+}
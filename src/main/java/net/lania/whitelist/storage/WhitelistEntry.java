@@ -0,0 +1,23 @@
+package net.lania.whitelist.storage;
+
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * A single row of the whitelist table.
+ *
+ * @param uniqueId The UUID of the whitelisted player.
+ * @param username The username stored alongside the UUID.
+ */
+public record WhitelistEntry(UUID uniqueId, String username) {
+
+  /**
+   * Orders entries by lower-cased username, then by UUID string, the order in
+   * which username pages are listed.
+   */
+  public static final Comparator<WhitelistEntry> BY_USERNAME = Comparator
+      .comparing((WhitelistEntry entry) -> entry.username().toLowerCase(Locale.ROOT))
+      .thenComparing(entry -> entry.uniqueId().toString());
+
+}
@@ -0,0 +1,220 @@
+package net.lania.whitelist.storage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Backend holding the whitelist.
+ * Lookups report errors through their return value rather than exceptions, so
+ * callers can tell "not whitelisted" apart from "could not check".
+ */
+public interface WhitelistStorage {
+
+  /**
+   * Opens the backend and creates its tables or files if needed.
+   *
+   * @return True if the backend is ready to use.
+   */
+  boolean init();
+
+  /**
+   * Closes the backend and releases its resources.
+   */
+  void close();
+
+  /**
+   * Checks if a UUID is whitelisted.
+   *
+   * @param uniqueId The UUID to look up.
+   * @return 1 if the UUID is whitelisted, 0 if not and -1 on error.
+   */
+  int findEntryByUniqueId(@NotNull UUID uniqueId);
+
+  /**
+   * Checks which of the given UUIDs are whitelisted.
+   *
+   * @param uniqueIds The UUIDs to look up.
+   * @return The subset of the UUIDs that are whitelisted, or null on error.
+   */
+  Set<UUID> findEntriesByUniqueIds(@NotNull Collection<UUID> uniqueIds);
+
+  /**
+   * Checks which of the given UUIDs are whitelisted, for admin commands.
+   * Backends splitting their connections between workloads run this as admin
+   * work, so commands never use the capacity reserved for logins.
+   *
+   * @param uniqueIds The UUIDs to look up.
+   * @return The subset of the UUIDs that are whitelisted, or null on error.
+   */
+  default Set<UUID> findEntriesByUniqueIdsForAdmin(@NotNull Collection<UUID> uniqueIds) {
+    return findEntriesByUniqueIds(uniqueIds);
+  }
+
+  /**
+   * Loads every whitelist entry.
+   *
+   * @return The entries, or null on error.
+   */
+  List<WhitelistEntry> findAllEntries();
+
+  /**
+   * Loads the entries whose change marker column is at least the given marker.
+   * Backends without change markers return every entry and a null marker.
+   *
+   * @param column The name of the change marker column.
+   * @param marker The marker returned by the previous call, or null to load
+   *               every entry.
+   * @return The changed entries and the new marker, or null on error.
+   */
+  default ChangeSet findEntriesChangedSince(@NotNull String column, Object marker) {
+    final List<WhitelistEntry> entries = findAllEntries();
+    return entries == null ? null : new ChangeSet(entries, null);
+  }
+
+  /**
+   * Checks whether the backend keeps a log of whitelist changes that other
+   * proxies can poll.
+   *
+   * @return True if the change log methods are supported.
+   */
+  default boolean hasChangeLog() {
+    return false;
+  }
+
+  /**
+   * Reads the range of versions held by the change log.
+   *
+   * @return The bounds of the change log, or null on error or if there is no
+   *         change log.
+   */
+  default ChangeLogBounds findChangeLogBounds() {
+    return null;
+  }
+
+  /**
+   * Loads the changes newer than a version, oldest first.
+   *
+   * @param version The last version already applied.
+   * @param limit   The maximum number of changes to return.
+   * @return The changes, or null on error or if there is no change log.
+   */
+  default List<WhitelistChange> findChangesSince(long version, int limit) {
+    return null;
+  }
+
+  /**
+   * Deletes change log rows older than the given age. The newest row is always
+   * kept, so readers can tell how far the log goes.
+   *
+   * @param maxAgeSeconds The age in seconds beyond which rows are deleted.
+   * @return The number of deleted rows, or -1 on error.
+   */
+  default int pruneChangeLog(long maxAgeSeconds) {
+    return 0;
+  }
+
+  /**
+   * Counts the whitelist entries.
+   *
+   * @return The number of entries, or -1 on error.
+   */
+  long countEntries();
+
+  /**
+   * Finds whitelisted usernames starting with a string, ignoring case.
+   *
+   * @param remaining The prefix to search for.
+   * @param limit     The maximum number of usernames to return.
+   * @return The matching usernames, empty on error.
+   */
+  List<String> findUsernameLikeString(@NotNull String remaining, int limit);
+
+  /**
+   * Reads one page of whitelisted players whose username starts with a string,
+   * ignoring case. Pages are in {@link WhitelistEntry#BY_USERNAME} order and
+   * continue after the last entry of the previous page (keyset pagination), so
+   * reading a page costs the same wherever it is in the whitelist.
+   *
+   * @param prefix The prefix to search for.
+   * @param after  The last entry of the previous page, or null for the first
+   *               page.
+   * @param limit  The maximum number of entries to return.
+   * @return The entries of the page, or null on error.
+   */
+  List<WhitelistEntry> findUsernamePage(@NotNull String prefix, WhitelistEntry after, int limit);
+
+  /**
+   * Adds a player to the whitelist, updating the username if the UUID is
+   * already whitelisted.
+   *
+   * @param uniqueId The UUID of the player.
+   * @param username The username of the player.
+   * @return True on success.
+   */
+  boolean insertWhitelist(@NotNull UUID uniqueId, @NotNull String username);
+
+  /**
+   * Adds many players to the whitelist, all or nothing.
+   *
+   * @param entries The entries to add.
+   * @return True on success.
+   */
+  boolean insertWhitelistBatch(@NotNull List<WhitelistEntry> entries);
+
+  /**
+   * Removes a player from the whitelist.
+   *
+   * @param uniqueId The UUID of the player.
+   * @return True on success.
+   */
+  boolean deleteWhitelist(@NotNull UUID uniqueId);
+
+  /**
+   * Removes many players from the whitelist, all or nothing.
+   *
+   * @param uniqueIds The UUIDs to remove.
+   * @return True on success.
+   */
+  boolean deleteWhitelistBatch(@NotNull List<UUID> uniqueIds);
+
+  /**
+   * Streams every whitelist entry to a consumer without loading them all at
+   * once.
+   *
+   * @param fetchSize The number of entries fetched per round trip, if the
+   *                  backend fetches in chunks.
+   * @param consumer  Receives every entry.
+   * @return True if every entry was read, false on error.
+   */
+  boolean streamAllEntries(int fetchSize, @NotNull Consumer<WhitelistEntry> consumer);
+
+  /**
+   * Reads the state of the connection pool, if the backend has one.
+   *
+   * @return The pool state, or null if the backend has no pool or it is not
+   *         open.
+   */
+  default PoolStats getPoolStats() {
+    return null;
+  }
+
+  /**
+   * Converts the storage to BINARY(16) UUIDs.
+   * Only meaningful for SQL backends, others report that there is nothing to
+   * migrate.
+   *
+   * @param chunkSize The number of rows converted per statement.
+   * @param progress  Receives progress messages.
+   * @return True if the migration completed.
+   */
+  default boolean migrateToBinaryUuids(int chunkSize, @NotNull Consumer<String> progress) {
+    progress.accept("This storage type does not need a UUID migration");
+    return true;
+  }
+
+}